@@ -0,0 +1,476 @@
+package bgu.spl.mics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Applies the {@link OverflowPolicy} of every message on top of the queue
+ * operations of a concrete mailbox.
+ * <p>
+ * A coalesced message waits in the queue inside a {@link Coalesced} holder. While the
+ * holder is waiting, newer messages of the same class only replace its content.
+ * <p>
+ * Messages added together by {@link #offerAll(List, List)} to an unbounded mailbox without
+ * coalesced classes wait in the queue as a single {@link Batch} entry. When the owner takes
+ * one, the messages it cannot hand out yet wait in {@code unpacked}, which only the owner
+ * touches. A bounded mailbox takes every message on its own, so its capacity counts
+ * messages and every message gets the overflow policy of its class.
+ */
+abstract class AbstractMailbox implements Mailbox {
+    private final OverflowPolicy defaultPolicy;
+    private final Map<Class<? extends Message>, OverflowPolicy> policies;
+    private final Map<Class<? extends Message>, Coalesced> waitingCoalesced;
+    private final MailboxStats stats;
+    // whether offerAll adds a batch as a single entry
+    private final boolean batches;
+    private volatile boolean closed = false;
+    private volatile Runnable signal = null;
+    private volatile IntConsumer dropHook = null;
+
+    // messages that are not queue entries of their own: the rest of queued batches and unpacked
+    private final AtomicInteger batchedMessages = new AtomicInteger();
+    private final ArrayDeque<Message> unpacked = new ArrayDeque<>();
+    private final List<Message> drained = new ArrayList<>();
+
+    /**
+     * @param bounded Whether the queue has a capacity.
+     */
+    AbstractMailbox(boolean bounded, OverflowPolicy defaultPolicy, Map<Class<? extends Message>, OverflowPolicy> policies, MailboxStats stats) {
+        this.defaultPolicy = defaultPolicy;
+        this.policies = policies;
+        this.waitingCoalesced = policies.containsValue(OverflowPolicy.COALESCE) || defaultPolicy == OverflowPolicy.COALESCE ? new ConcurrentHashMap<>() : null;
+        this.stats = stats;
+        this.batches = !bounded && waitingCoalesced == null;
+    }
+
+    /**
+     * Adds {@code m} if there is room, without waiting.
+     */
+    abstract boolean tryOffer(Message m);
+
+    /**
+     * Adds {@code m}, waiting for room until the mailbox is closed.
+     * @return false if the mailbox was closed first.
+     */
+    abstract boolean put(Message m);
+
+    /**
+     * Removes the oldest waiting queue entry that {@code droppable} accepts without waiting,
+     * for {@link OverflowPolicy#DROP_OLDEST}.
+     * @return null if no waiting entry may be dropped.
+     */
+    abstract Message pollOldest(Predicate<Message> droppable);
+
+    /**
+     * Takes the next queue entry, waiting until one is available.
+     */
+    abstract Message takeNext() throws InterruptedException;
+
+    /**
+     * Moves up to {@code maxEntries} waiting queue entries to {@code batch} without waiting.
+     */
+    abstract void drainNext(List<Message> batch, int maxEntries);
+
+    /**
+     * @return the number of entries in the queue, a batch being a single entry.
+     */
+    abstract int queuedEntries();
+
+    final boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public void setSignal(Runnable signal) {
+        this.signal = signal;
+    }
+
+    @Override
+    public void setDropHook(IntConsumer hook) {
+        this.dropHook = hook;
+    }
+
+    /**
+     * Reports {@code count} messages that were added and are dropped now.
+     */
+    private void droppedAfterAdded(int count) {
+        IntConsumer current = dropHook;
+        if (current != null) {
+            current.accept(count);
+        }
+    }
+
+    private boolean signalIfAdded(boolean added) {
+        Runnable current = signal;
+        if (added && current != null) {
+            current.run();
+        }
+        return added;
+    }
+
+    @Override
+    public int size() {
+        return queuedEntries() + batchedMessages.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return queuedEntries() == 0 && batchedMessages.get() == 0;
+    }
+
+    @Override
+    public final boolean offer(Message m) {
+        if (closed) {
+            return false;
+        }
+        OverflowPolicy policy = policyOf(m);
+        if (policy == OverflowPolicy.COALESCE) {
+            return signalIfAdded(coalesce(m));
+        }
+        return signalIfAdded(enqueue(m, policy));
+    }
+
+    /**
+     * Adds all of {@code messages} as a single queue entry if the mailbox is unbounded and
+     * none of its classes is coalesced, so that no overflow policy applies. Otherwise every
+     * message is offered on its own, like {@link #offer(Message)}.
+     */
+    @Override
+    public final int offerAll(List<? extends Message> messages, List<Message> dropped) {
+        if (!batches || messages.size() <= 1) {
+            int added = 0;
+            for (Message m : messages) {
+                if (offer(m)) {
+                    added++;
+                } else {
+                    dropped.add(m);
+                }
+            }
+            return added;
+        }
+        if (closed) {
+            dropped.addAll(messages);
+            return 0;
+        }
+        Batch batch = new Batch(messages.toArray(new Message[0]));
+        // counted before it can be taken, so size() never goes below the truth
+        batchedMessages.addAndGet(batch.messages.length - 1);
+        // the queue is never full, the batch is only refused once the mailbox is closed
+        if (enqueue(batch, OverflowPolicy.BLOCK)) {
+            signalIfAdded(true);
+            return batch.messages.length;
+        }
+        batchedMessages.addAndGet(1 - batch.messages.length);
+        dropped.addAll(messages);
+        return 0;
+    }
+
+    private OverflowPolicy policyOf(Message m) {
+        return policies.isEmpty() ? defaultPolicy : policies.getOrDefault(typeOf(m), defaultPolicy);
+    }
+
+    private static Class<? extends Message> typeOf(Message m) {
+        return m instanceof Envelope ? ((Envelope) m).event.getClass() : m.getClass();
+    }
+
+    /**
+     * Fails the future of an event that was dropped after it was accepted.
+     */
+    private static void discarded(Message m) {
+        if (m instanceof Envelope) {
+            ((Envelope) m).fail();
+        }
+    }
+
+    private boolean enqueue(Message m, OverflowPolicy policy) {
+        if (tryOffer(m)) {
+            return true;
+        }
+        switch (policy) {
+            case BLOCK:
+                stats.incrementBlocked();
+                if (managedPut(m)) {
+                    return true;
+                }
+                break;
+            case DROP_OLDEST:
+                while (!closed) {
+                    Message oldest = pollOldest(this::isDroppable);
+                    if (oldest == null) {
+                        // every waiting message must be kept, so the arriving one goes
+                        break;
+                    }
+                    if (oldest instanceof Coalesced) {
+                        oldest = ((Coalesced) oldest).discard(this);
+                    }
+                    // the owner may have emptied the holder in the meantime
+                    if (oldest != null) {
+                        stats.incrementDropped();
+                        droppedAfterAdded(1);
+                    }
+                    discarded(oldest);
+                    if (tryOffer(m)) {
+                        return true;
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+        stats.incrementDropped(m instanceof Batch ? ((Batch) m).messages.length : 1);
+        return false;
+    }
+
+    /**
+     * Whether a waiting queue entry may be dropped to make room for a
+     * {@link OverflowPolicy#DROP_OLDEST} message: only if its own policy may lose it too.
+     * Batches only wait in unbounded queues, which are never full.
+     */
+    private boolean isDroppable(Message entry) {
+        if (entry instanceof Coalesced) {
+            return true;
+        }
+        return !(entry instanceof Batch) && policyOf(entry) != OverflowPolicy.BLOCK;
+    }
+
+    /**
+     * Calls {@link #put(Message)} as a managed blocker, so a {@link ForkJoinPool} worker
+     * waiting for room gets a spare thread and the owner of the mailbox can still run.
+     */
+    private boolean managedPut(Message m) {
+        PutBlocker blocker = new PutBlocker(m);
+        try {
+            ForkJoinPool.managedBlock(blocker);
+        } catch (InterruptedException ex) {
+            // put does not throw, it restores the interrupt itself
+            Thread.currentThread().interrupt();
+        }
+        return blocker.added;
+    }
+
+    private final class PutBlocker implements ForkJoinPool.ManagedBlocker {
+        private final Message m;
+        private boolean added = false;
+        private boolean done = false;
+
+        PutBlocker(Message m) {
+            this.m = m;
+        }
+
+        @Override
+        public boolean block() {
+            added = put(m);
+            done = true;
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            if (!done && tryOffer(m)) {
+                added = true;
+                done = true;
+            }
+            return done;
+        }
+    }
+
+    private boolean coalesce(Message m) {
+        Class<? extends Message> type = typeOf(m);
+        while (true) {
+            Coalesced waiting = waitingCoalesced.get(type);
+            if (waiting != null) {
+                if (replace(waiting, m)) {
+                    return true;
+                }
+                // the owner took it in the meantime and may not have unmapped it yet
+                waitingCoalesced.remove(type, waiting);
+            }
+            Coalesced holder = new Coalesced(m);
+            if (waitingCoalesced.putIfAbsent(type, holder) != null) {
+                // another sender queued a holder first, replace its content instead
+                continue;
+            }
+            if (enqueue(holder, OverflowPolicy.DROP_NEWEST)) {
+                return true;
+            }
+            Message latest = holder.discard(this);
+            if (latest == m) {
+                return false;
+            }
+            // a sender replaced m while the mailbox was full; m already counts as coalesced
+            discarded(latest);
+            droppedAfterAdded(1);
+            return true;
+        }
+    }
+
+    /**
+     * Replaces the content of a waiting holder with {@code m}.
+     * @return false if the owner took the holder first.
+     */
+    private boolean replace(Coalesced waiting, Message m) {
+        while (true) {
+            Message previous = waiting.message.get();
+            if (previous == null) {
+                return false;
+            }
+            if (waiting.message.compareAndSet(previous, m)) {
+                discarded(previous);
+                stats.incrementCoalesced();
+                droppedAfterAdded(1);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public final Message take() throws InterruptedException {
+        if (!unpacked.isEmpty()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        } else {
+            do {
+                Message entry = takeNext();
+                if (!isWrapped(entry)) {
+                    return entry;
+                }
+                unpack(entry);
+            } while (unpacked.isEmpty());
+        }
+        batchedMessages.decrementAndGet();
+        return unpacked.poll();
+    }
+
+    @Override
+    public final int takeBatch(List<Message> batch, int maxMessages) throws InterruptedException {
+        int first = batch.size();
+        batch.add(take());
+        fill(batch, maxMessages - 1);
+        return batch.size() - first;
+    }
+
+    @Override
+    public final int pollBatch(List<Message> batch, int maxMessages) {
+        int first = batch.size();
+        fill(batch, maxMessages);
+        return batch.size() - first;
+    }
+
+    /**
+     * Moves up to {@code room} waiting messages to {@code batch} without waiting.
+     */
+    private void fill(List<Message> batch, int room) {
+        while (room > 0) {
+            if (unpacked.isEmpty()) {
+                drainNext(drained, room);
+                if (drained.isEmpty()) {
+                    break;
+                }
+                for (Message entry : drained) {
+                    if (room > 0 && unpacked.isEmpty() && !isWrapped(entry)) {
+                        batch.add(entry);
+                        room--;
+                    } else {
+                        unpack(entry);
+                    }
+                }
+                drained.clear();
+            }
+            while (room > 0 && !unpacked.isEmpty()) {
+                batchedMessages.decrementAndGet();
+                batch.add(unpacked.poll());
+                room--;
+            }
+        }
+    }
+
+    @Override
+    public final void drainTo(List<Message> remaining) {
+        while (true) {
+            drainNext(drained, Integer.MAX_VALUE);
+            if (drained.isEmpty()) {
+                break;
+            }
+            for (Message entry : drained) {
+                unpack(entry);
+            }
+            drained.clear();
+        }
+        while (!unpacked.isEmpty()) {
+            batchedMessages.decrementAndGet();
+            remaining.add(unpacked.poll());
+        }
+    }
+
+    private static boolean isWrapped(Message entry) {
+        return entry instanceof Batch || entry instanceof Coalesced;
+    }
+
+    /**
+     * Moves the messages of a queue entry the owner took to {@code unpacked}, where
+     * they wait until they are handed out.
+     */
+    private void unpack(Message entry) {
+        if (entry instanceof Batch) {
+            // the rest of the batch was counted when it was added
+            batchedMessages.incrementAndGet();
+            for (Message m : ((Batch) entry).messages) {
+                unpacked.add(m);
+            }
+            return;
+        }
+        Message m = entry instanceof Coalesced ? ((Coalesced) entry).discard(this) : entry;
+        if (m != null) {
+            batchedMessages.incrementAndGet();
+            unpacked.add(m);
+        }
+    }
+
+    /**
+     * Several messages that take a single queue entry.
+     */
+    private static final class Batch implements Message {
+        private final Message[] messages;
+
+        Batch(Message[] messages) {
+            this.messages = messages;
+        }
+    }
+
+    /**
+     * Holds the latest message of a coalesced class while it waits in the queue.
+     */
+    private static final class Coalesced implements Message {
+        private final AtomicReference<Message> message;
+
+        Coalesced(Message m) {
+            this.message = new AtomicReference<>(m);
+        }
+
+        /**
+         * Empties the holder once it left the queue, so no sender replaces its content anymore.
+         * @return the latest message it held, or null if it was already emptied.
+         */
+        Message discard(AbstractMailbox mailbox) {
+            Message m = message.getAndSet(null);
+            if (m != null) {
+                mailbox.waitingCoalesced.remove(typeOf(m), this);
+            }
+            return m;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package bgu.spl.mics;
+
+/**
+ * Carries an {@link Event} through the mailbox of its handler together with the
+ * {@link Future} its sender holds, so completing the event resolves the future
+ * without looking it up.
+ */
+final class Envelope implements Message {
+    final Event<?> event;
+    final Future<?> future;
+    private volatile boolean completed = false;
+
+    Envelope(Event<?> event, Future<?> future) {
+        this.event = event;
+        this.future = future;
+    }
+
+    boolean isCompleted() {
+        return completed;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> void complete(T result) {
+        completed = true;
+        ((Future<T>) future).resolve(result);
+    }
+
+    /**
+     * Resolves the future with null, for events that will never be handled.
+     */
+    void fail() {
+        complete(null);
+    }
+}
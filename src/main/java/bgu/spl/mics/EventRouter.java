@@ -0,0 +1,26 @@
+package bgu.spl.mics;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * Chooses which of the micro-services subscribed to an {@link Event} type receives
+ * the next event of that type.
+ * <p>
+ * The message-bus keeps one router per event type (see
+ * {@link MessageBusImpl#setEventRouter(Class, EventRouter)}) and may call it from many
+ * sending threads at once, so implementations must be thread-safe.
+ * {@link RoutingPolicy} lists the routers that come with the framework.
+ */
+public interface EventRouter {
+
+    /**
+     * Picks the micro-service that should handle the next event.
+     * <p>
+     * @param subscribers The current subscribers of the event type, never empty.
+     *                    The array must not be modified.
+     * @param queueDepth  Returns the number of messages waiting for a subscriber, in
+     *                    its queue or in the batch it took from there.
+     * @return the index in {@code subscribers} of the chosen micro-service.
+     */
+    int select(MicroService[] subscribers, ToIntFunction<MicroService> queueDepth);
+}
@@ -0,0 +1,27 @@
+package bgu.spl.mics;
+
+/**
+ * What the event loops of the micro-services run on, see {@link ServiceExecutor}.
+ */
+public enum ExecutionMode {
+
+    /**
+     * One platform thread per micro-service, blocked in its mailbox while idle.
+     */
+    PLATFORM,
+
+    /**
+     * One virtual thread per micro-service. An idle micro-service only costs a
+     * parked continuation instead of an OS thread. Needs Java 21, older runtimes
+     * fall back to {@link #PLATFORM}.
+     */
+    VIRTUAL,
+
+    /**
+     * All micro-services share a {@link java.util.concurrent.ForkJoinPool} with a
+     * thread per core. A micro-service is scheduled when a message arrives, handles a
+     * bounded batch of messages and gives the thread back, like an actor. The
+     * callbacks of one micro-service never run concurrently.
+     */
+    POOL
+}
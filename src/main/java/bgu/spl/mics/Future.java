@@ -1,74 +1,142 @@
 package bgu.spl.mics;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 
 /**
  * A Future object represents a promised result - an object that will
  * eventually be resolved to hold a result of some operation. The class allows
  * Retrieving the result once it is available.
- * 
- * Only private methods may be added to this class.
+ * <p>
+ * The result is published by a single compare-and-set, so resolving never takes a
+ * lock. Threads blocked in {@link #get()} and callbacks added by {@link #thenAccept(Consumer)}
+ * wait on a lock-free stack that the resolving thread takes over and runs. A thread
+ * that stops waiting in {@link #get(long, TimeUnit)} cancels its node and unlinks the
+ * cancelled nodes, so timed waits on an unresolved Future do not pile up.
+ * <p>
+ * Besides the blocking {@link #get()} and {@link #get(long, TimeUnit)}, a result can be
+ * consumed without blocking through {@link #thenAccept(Consumer)} or
+ * {@link #toCompletableFuture()}. The package-private {@link #waiting()} is there for
+ * the tests.
  * No public constructor is allowed except for the empty constructor.
  */
-public class Future<T> 
+public class Future<T>
 {
-	private T result;
-	private boolean isResolved;
-	
+	// stands for a null result, so a null outcome means not resolved yet
+	private static final Object NULL_RESULT = new Object();
+	// replaces the stack once resolved, nothing can be pushed after it
+	private static final Node RESOLVED = new Node(null, null);
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<Future, Object> OUTCOME =
+		AtomicReferenceFieldUpdater.newUpdater(Future.class, Object.class, "outcome");
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<Future, Node> WAITERS =
+		AtomicReferenceFieldUpdater.newUpdater(Future.class, Node.class, "waiters");
+
+	private volatile Object outcome;
+	private volatile Node waiters;
+
+	/**
+	 * A blocked thread or a callback, waiting for the result.
+	 */
+	private static final class Node
+	{
+		private final Thread thread;
+		private final Consumer<Object> action;
+		private volatile Node next;
+		// set by a thread that stopped waiting, the node is skipped and unlinked
+		private volatile boolean cancelled;
+
+		Node(Thread thread, Consumer<Object> action)
+		{
+			this.thread = thread;
+			this.action = action;
+		}
+	}
+
 	/**
 	 * This should be the the only public constructor in this class.
 	 */
-	public Future() 
+	public Future()
 	{
-		this.result = null;
-		this.isResolved = false;
+		this.outcome = null;
+		this.waiters = null;
 	}
-	
+
 	/**
      * retrieves the result the Future object holds if it has been resolved.
      * This is a blocking method! It waits for the computation in case it has
      * not been completed.
      * <p>
+     * An interrupt does not stop the wait, the interrupt status is restored once
+     * the result is available.
+     * <p>
      * @return return the result of type T if it is available, if not wait until it is available.
-     * 	       
+     *
      */
-	public synchronized T get() 
+	public T get()
 	{
-		while(!isResolved)
+		if(outcome == null)
 		{
-			try
+			Node node = new Node(Thread.currentThread(), null);
+			boolean interrupted = false;
+			if(push(node))
 			{
-				Thread.currentThread().wait();
+				while(outcome == null)
+				{
+					LockSupport.park(this);
+					// park returns at once while the interrupt status is set
+					interrupted |= Thread.interrupted();
+				}
 			}
-			catch(InterruptedException exception)
+			if(interrupted)
 			{
 				Thread.currentThread().interrupt();
 			}
 		}
-		return result;
+		return result();
 	}
-	
+
 	/**
      * Resolves the result of this Future object.
+     * Only the first call has an effect, it wakes up the threads waiting in {@link #get()}
+     * and runs the callbacks added by {@link #thenAccept(Consumer)} on the calling thread.
      */
-	public synchronized void resolve (T result) 
+	public void resolve (T result)
 	{
-		if(!this.isResolved)
+		if(OUTCOME.compareAndSet(this, null, result == null ? NULL_RESULT : result))
 		{
-			this.isResolved = true;
-			this.result = result;
-			notifyAll();
+			// the links are left as they are, a thread unlinking cancelled nodes may still walk them
+			List<Node> stack = new ArrayList<>();
+			for(Node node = WAITERS.getAndSet(this, RESOLVED); node != null; node = node.next)
+			{
+				if(!node.cancelled)
+				{
+					stack.add(node);
+				}
+			}
+			// the stack is newest first, run it in the order it was built
+			for(int i = stack.size() - 1; i >= 0; i--)
+			{
+				wake(stack.get(i));
+			}
 		}
 	}
-	
+
 	/**
      * @return true if this object has been resolved, false otherwise
      */
-	public synchronized boolean isDone() 
+	public boolean isDone()
 	{
-		return isResolved;
+		return outcome != null;
 	}
-	
+
 	/**
      * retrieves the result the Future object holds if it has been resolved,
      * This method is non-blocking, it has a limited amount of time determined
@@ -76,24 +144,159 @@ public class Future<T>
      * <p>
      * @param timout 	the maximal amount of time units to wait for the result.
      * @param unit		the {@link TimeUnit} time units to wait.
-     * @return return the result of type T if it is available, if not, 
+     * @return return the result of type T if it is available, if not,
      * 	       wait for {@code timeout} TimeUnits {@code unit}. If time has
      *         elapsed, return null.
      */
-	public synchronized T get(long timeout, TimeUnit unit) 
+	public T get(long timeout, TimeUnit unit)
+	{
+		if(outcome == null && timeout > 0)
+		{
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			Node node = new Node(Thread.currentThread(), null);
+			if(push(node))
+			{
+				long remaining;
+				while(outcome == null && (remaining = deadline - System.nanoTime()) > 0)
+				{
+					LockSupport.parkNanos(this, remaining);
+					if(Thread.currentThread().isInterrupted())
+					{
+						break;
+					}
+				}
+				if(outcome == null)
+				{
+					node.cancelled = true;
+					unlinkCancelled();
+				}
+			}
+		}
+		return result();
+	}
+
+	/**
+	 * Runs {@code action} with the result once this Future is resolved, without
+	 * blocking the caller. The action runs on the thread that resolves it, or on
+	 * the calling thread right away if it is already resolved.
+	 * <p>
+	 * @param action	the callback to run with the result.
+	 */
+	@SuppressWarnings("unchecked")
+	public void thenAccept(Consumer<? super T> action)
+	{
+		Node node = new Node(null, (Consumer<Object>) action);
+		if(!push(node))
+		{
+			wake(node);
+		}
+	}
+
+	/**
+	 * @return a {@link CompletableFuture} that completes with the result of this Future,
+	 *         for code that wants to chain on it.
+	 */
+	public CompletableFuture<T> toCompletableFuture()
 	{
-		if(!isResolved)
+		CompletableFuture<T> completable = new CompletableFuture<>();
+		thenAccept(completable::complete);
+		return completable;
+	}
+
+	/**
+	 * Pushes {@code node} on the waiting stack.
+	 * @return false if this Future was resolved first, the node was not pushed.
+	 */
+	private boolean push(Node node)
+	{
+		while(true)
 		{
-			try
+			Node head = waiters;
+			if(head == RESOLVED)
 			{
-				unit.timedWait(this, timeout);
+				return false;
 			}
-			catch(InterruptedException exception)
+			node.next = head;
+			if(WAITERS.compareAndSet(this, head, node))
 			{
-				Thread.currentThread().interrupt();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Unlinks the cancelled nodes from the waiting stack. A cancelled node at the top is
+	 * popped by a compare-and-set, one further down is skipped by its live predecessor;
+	 * if that predecessor got cancelled meanwhile, the walk starts over.
+	 */
+	private void unlinkCancelled()
+	{
+		retry:
+		while(true)
+		{
+			Node previous = null;
+			for(Node node = waiters, next; node != null && node != RESOLVED; node = next)
+			{
+				next = node.next;
+				if(!node.cancelled)
+				{
+					previous = node;
+				}
+				else if(previous != null)
+				{
+					previous.next = next;
+					if(previous.cancelled)
+					{
+						continue retry;
+					}
+				}
+				else if(!WAITERS.compareAndSet(this, node, next))
+				{
+					continue retry;
+				}
+			}
+			return;
+		}
+	}
+
+	/**
+	 * @return the number of threads and callbacks waiting for the result.
+	 */
+	int waiting()
+	{
+		int count = 0;
+		for(Node node = waiters; node != null && node != RESOLVED; node = node.next)
+		{
+			if(!node.cancelled)
+			{
+				count++;
 			}
 		}
-		return result;
+		return count;
+	}
+
+	private void wake(Node node)
+	{
+		if(node.thread != null)
+		{
+			LockSupport.unpark(node.thread);
+			return;
+		}
+		try
+		{
+			node.action.accept(result());
+		}
+		catch(RuntimeException exception)
+		{
+			System.err.println("Future callback failed: " + exception);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private T result()
+	{
+		Object current = outcome;
+		return current == NULL_RESULT ? null : (T) current;
 	}
 
 }
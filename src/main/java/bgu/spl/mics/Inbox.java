@@ -0,0 +1,240 @@
+package bgu.spl.mics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * What the {@link MessageBusImpl} keeps for every registered {@link MicroService}:
+ * its mailbox and the events it took but did not complete yet.
+ * <p>
+ * The event whose callback is running is only referenced by {@code current}, it is
+ * added to {@code inFlight} if the callback returns without completing it. Completing
+ * the current event therefore touches no map at all.
+ * <p>
+ * Unless it belongs to a clock, the inbox counts its unsettled messages on a
+ * {@link QuiescenceTracker}, until the micro-service is unregistered.
+ */
+final class Inbox {
+    final Mailbox mailbox;
+    private volatile Envelope current = null;
+    // the message handed to the running callback, only used by the owner
+    private Message handling = null;
+    private final ConcurrentHashMap<Event<?>, Envelope> inFlight = new ConcurrentHashMap<>();
+    // taken by the owner but never handed to a callback, because it terminated first
+    private final List<Message> undelivered = new ArrayList<>();
+    // the rest of the batch the owner took, behind the running callback; only the owner writes it
+    private volatile int undispatched = 0;
+
+    // marks an inbox that stopped counting
+    private static final int DETACHED = Integer.MIN_VALUE;
+    private final QuiescenceTracker tracker;
+    private final AtomicInteger unsettled = new AtomicInteger();
+
+    /**
+     * @param tracker The tracker to count the messages on, null to count nothing.
+     */
+    Inbox(Mailbox mailbox, QuiescenceTracker tracker) {
+        this.mailbox = mailbox;
+        this.tracker = tracker;
+        if (tracker != null) {
+            mailbox.setDropHook(this::settled);
+        }
+    }
+
+    /**
+     * Adds {@code m} to the mailbox, counting it until it is settled.
+     * @return false if the mailbox dropped it.
+     */
+    boolean offer(Message m) {
+        arrived(1);
+        if (mailbox.offer(m)) {
+            return true;
+        }
+        settled(1);
+        return false;
+    }
+
+    /**
+     * Adds all of {@code messages} to the mailbox, see {@link #offer(Message)}.
+     * @return the number of messages added, the dropped ones are appended to {@code dropped}.
+     */
+    int offerAll(List<? extends Message> messages, List<Message> dropped) {
+        arrived(messages.size());
+        int added = mailbox.offerAll(messages, dropped);
+        if (added < messages.size()) {
+            settled(messages.size() - added);
+        }
+        return added;
+    }
+
+    /**
+     * Counts {@code count} messages that are about to be added, or that are kept
+     * unsettled on behalf of the owner.
+     */
+    void arrived(int count) {
+        if (tracker == null) {
+            return;
+        }
+        // the tracker is raised first, it may count too much for a moment but never too little
+        tracker.add(count);
+        while (true) {
+            int current = unsettled.get();
+            if (current == DETACHED) {
+                tracker.add(-count);
+                return;
+            }
+            if (unsettled.compareAndSet(current, current + count)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Settles {@code count} messages that were handled or dropped.
+     */
+    void settled(int count) {
+        if (tracker == null) {
+            return;
+        }
+        while (true) {
+            int current = unsettled.get();
+            if (current == DETACHED) {
+                return;
+            }
+            if (unsettled.compareAndSet(current, current - count)) {
+                tracker.add(-count);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Settles every message that is still counted and stops counting. Called once
+     * the messages left in the inbox were sent elsewhere.
+     */
+    void detach() {
+        if (tracker != null) {
+            int left = unsettled.getAndSet(DETACHED);
+            if (left != DETACHED) {
+                tracker.add(-left);
+            }
+        }
+    }
+
+    /**
+     * Starts the callback of a message taken from the mailbox.
+     * @return the message to hand to the callback.
+     */
+    Message begin(Message entry) {
+        if (entry instanceof Envelope) {
+            Envelope envelope = (Envelope) entry;
+            current = envelope;
+            handling = envelope.event;
+        } else {
+            handling = entry;
+        }
+        return handling;
+    }
+
+    /**
+     * Ends the callback started by the last {@link #begin(Message)}.
+     */
+    void end() {
+        handling = null;
+        Envelope envelope = current;
+        if (envelope != null) {
+            // tracked before current is cleared, so a concurrent complete finds it in one of them
+            if (!envelope.isCompleted()) {
+                inFlight.put(envelope.event, envelope);
+                if (envelope.isCompleted()) {
+                    inFlight.remove(envelope.event, envelope);
+                }
+            }
+            current = null;
+        }
+    }
+
+    /**
+     * Unwraps a message that is handed out without a callback, tracking its event
+     * until it is completed.
+     */
+    Message deliver(Message entry) {
+        settled(1);
+        if (entry instanceof Envelope) {
+            Envelope envelope = (Envelope) entry;
+            inFlight.put(envelope.event, envelope);
+            return envelope.event;
+        }
+        return entry;
+    }
+
+    /**
+     * Sets how many messages of the batch the owner took still wait for a callback.
+     */
+    void setUndispatched(int count) {
+        undispatched = count;
+    }
+
+    /**
+     * @return the number of messages that wait for the owner, in the mailbox or in
+     *         the batch it took.
+     */
+    int depth() {
+        return mailbox.size() + undispatched;
+    }
+
+    void keepUndelivered(List<Message> entries) {
+        undelivered.addAll(entries);
+    }
+
+    /**
+     * Completes {@code e} on behalf of the owner.
+     * @return true if {@code e} was taken from this inbox and is now completed.
+     */
+    <T> boolean completeOwn(Event<T> e, T result) {
+        if (e == handling && current == null) {
+            // sent without a reply, nobody waits for the result
+            return true;
+        }
+        return complete(e, result);
+    }
+
+    /**
+     * @return true if {@code e} was taken from this inbox and is now completed.
+     */
+    <T> boolean complete(Event<T> e, T result) {
+        Envelope envelope = current;
+        if (envelope == null || envelope.event != e) {
+            envelope = inFlight.remove(e);
+            if (envelope == null) {
+                return false;
+            }
+        }
+        envelope.complete(result);
+        return true;
+    }
+
+    /**
+     * Closes the mailbox and fails the events that were taken but not completed.
+     * @return the messages that were never taken or never handed to a callback,
+     *         in the order they were sent.
+     */
+    List<Message> close() {
+        mailbox.close();
+        List<Message> remaining = new ArrayList<>(undelivered);
+        undelivered.clear();
+        mailbox.drainTo(remaining);
+
+        Envelope envelope = current;
+        if (envelope != null) {
+            envelope.fail();
+        }
+        for (Envelope taken : inFlight.values()) {
+            taken.fail();
+        }
+        inFlight.clear();
+        return remaining;
+    }
+}
@@ -0,0 +1,86 @@
+package bgu.spl.mics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Mailbox} backed by a {@link LinkedBlockingQueue}.
+ */
+final class LinkedMailbox extends AbstractMailbox {
+    private static final long BLOCK_CHECK_MILLIS = 10;
+
+    private final LinkedBlockingQueue<Message> queue;
+
+    /**
+     * @param capacity       The maximal number of waiting messages, 0 for unbounded.
+     * @param overflowPolicy What to do with messages that arrive when it is full.
+     * @param policies       Overflow policies of specific message classes.
+     * @param stats          Where to count dropped, blocked and coalesced messages.
+     */
+    LinkedMailbox(int capacity, OverflowPolicy overflowPolicy, Map<Class<? extends Message>, OverflowPolicy> policies, MailboxStats stats) {
+        super(capacity != 0, overflowPolicy, policies, stats);
+        this.queue = capacity == 0 ? new LinkedBlockingQueue<>() : new LinkedBlockingQueue<>(capacity);
+    }
+
+    @Override
+    boolean tryOffer(Message m) {
+        return queue.offer(m);
+    }
+
+    /**
+     * Waits for room, re-checking every few milliseconds whether the owner went away.
+     * An interrupt does not abort the wait, it is restored once the message is in.
+     */
+    @Override
+    boolean put(Message m) {
+        boolean interrupted = false;
+        try {
+            while (!isClosed()) {
+                try {
+                    if (queue.offer(m, BLOCK_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            return false;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Walks the queue from its head. An entry the owner takes meanwhile is not removed
+     * again, the walk goes on to the next one.
+     */
+    @Override
+    Message pollOldest(Predicate<Message> droppable) {
+        for (Message entry : queue) {
+            if (droppable.test(entry) && queue.remove(entry)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    Message takeNext() throws InterruptedException {
+        return queue.take();
+    }
+
+    @Override
+    void drainNext(List<Message> batch, int maxEntries) {
+        queue.drainTo(batch, maxEntries);
+    }
+
+    @Override
+    int queuedEntries() {
+        return queue.size();
+    }
+}
@@ -0,0 +1,101 @@
+package bgu.spl.mics;
+
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * The message queue the {@link MessageBusImpl} allocates to every registered
+ * {@link MicroService}. Any thread may add messages, only the micro-service itself
+ * takes them.
+ */
+interface Mailbox {
+
+    /**
+     * Adds {@code m} to the mailbox. When the mailbox is full, the overflow policy
+     * of the mailbox decides whether this waits for room or gives up.
+     * <p>
+     * @param m The message to add.
+     * @return true if the message was added, false if it was dropped.
+     */
+    boolean offer(Message m);
+
+    /**
+     * Adds all of {@code messages}, in order, as a single operation when the mailbox
+     * can, see {@link #offer(Message)}.
+     * <p>
+     * @param messages The messages to add.
+     * @param dropped  The list the messages that were dropped are appended to, in order.
+     * @return the number of messages that were added.
+     */
+    int offerAll(List<? extends Message> messages, List<Message> dropped);
+
+    /**
+     * Takes the next message, waiting until one is available.
+     * <p>
+     * @return the oldest message in the mailbox.
+     * @throws InterruptedException if the calling thread is interrupted, also
+     *                              when messages are available.
+     */
+    Message take() throws InterruptedException;
+
+    /**
+     * Takes the next message, waiting until one is available, together with the
+     * messages that wait behind it, without waiting for more.
+     * <p>
+     * @param batch       The list the messages are appended to, oldest first.
+     * @param maxMessages The maximal number of messages to take, at least 1.
+     * @return the number of messages appended to {@code batch}.
+     * @throws InterruptedException if the calling thread is interrupted, also
+     *                              when messages are available.
+     */
+    int takeBatch(List<Message> batch, int maxMessages) throws InterruptedException;
+
+    /**
+     * Takes up to {@code maxMessages} waiting messages without waiting.
+     * <p>
+     * @param batch       The list the messages are appended to, oldest first.
+     * @param maxMessages The maximal number of messages to take.
+     * @return the number of messages appended to {@code batch}, 0 if none is waiting.
+     */
+    int pollBatch(List<Message> batch, int maxMessages);
+
+    /**
+     * Sets a hook that runs on the sending thread after every message that was added,
+     * for owners that are scheduled instead of waiting in {@link #take()}.
+     * <p>
+     * @param signal The hook, null for none.
+     */
+    void setSignal(Runnable signal);
+
+    /**
+     * Sets a hook that runs with the number of messages that were added and then
+     * dropped by the overflow policy, before the owner took them.
+     * <p>
+     * @param hook The hook, null for none.
+     */
+    void setDropHook(IntConsumer hook);
+
+    /**
+     * @return the number of messages waiting in the mailbox.
+     */
+    int size();
+
+    /**
+     * @return true if no message is waiting in the mailbox.
+     */
+    boolean isEmpty();
+
+    /**
+     * Called when the owner is unregistered. Senders that wait for room give up and
+     * further messages are dropped.
+     */
+    void close();
+
+    /**
+     * Moves every waiting message to {@code remaining} without waiting. Only called
+     * once the owner stopped taking messages.
+     * <p>
+     * @param remaining The list the messages are appended to, oldest first.
+     */
+    void drainTo(List<Message> remaining);
+}
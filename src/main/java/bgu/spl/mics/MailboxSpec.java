@@ -0,0 +1,112 @@
+package bgu.spl.mics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Describes the mailbox {@link MessageBusImpl} allocates to a micro-service when it
+ * registers. See {@link MessageBusImpl#configureMailboxes(MailboxSpec, java.util.Map)}.
+ */
+public final class MailboxSpec {
+
+    /**
+     * The mailbox implementations.
+     */
+    public enum Type {
+        /**
+         * A {@link java.util.concurrent.LinkedBlockingQueue}, unbounded unless a
+         * capacity is given. Allocates a node per message.
+         */
+        LINKED,
+
+        /**
+         * A bounded array-backed ring buffer for many senders and a single owner.
+         * Does not allocate per message.
+         */
+        RING
+    }
+
+    /**
+     * Unbounded linked mailboxes, what every micro-service gets by default.
+     */
+    public static final MailboxSpec DEFAULT = new MailboxSpec(Type.LINKED, 0, WaitStrategy.PARK, OverflowPolicy.BLOCK);
+
+    private final Type type;
+    private final int capacity;
+    private final WaitStrategy waitStrategy;
+    private final OverflowPolicy overflowPolicy;
+    private final Map<Class<? extends Message>, OverflowPolicy> messagePolicies;
+
+    /**
+     * @param type           The mailbox implementation.
+     * @param capacity       The maximal number of waiting messages, 0 for unbounded.
+     *                       Ring mailboxes must be bounded.
+     * @param waitStrategy   How threads wait on a ring mailbox.
+     * @param overflowPolicy What happens to messages that arrive when it is full.
+     */
+    public MailboxSpec(Type type, int capacity, WaitStrategy waitStrategy, OverflowPolicy overflowPolicy) {
+        this(type, capacity, waitStrategy, overflowPolicy, Collections.emptyMap());
+    }
+
+    /**
+     * @param type            The mailbox implementation.
+     * @param capacity        The maximal number of waiting messages, 0 for unbounded.
+     *                        Ring mailboxes must be bounded.
+     * @param waitStrategy    How threads wait on a ring mailbox.
+     * @param overflowPolicy  What happens to messages that arrive when it is full.
+     * @param messagePolicies Overflow policies of message classes that differ from
+     *                        {@code overflowPolicy}.
+     */
+    public MailboxSpec(Type type, int capacity, WaitStrategy waitStrategy, OverflowPolicy overflowPolicy,
+                       Map<Class<? extends Message>, OverflowPolicy> messagePolicies) {
+        if (capacity < 0 || (type == Type.RING && capacity == 0)) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity + " for a " + type + " mailbox");
+        }
+        if (type == Type.RING && (overflowPolicy == OverflowPolicy.DROP_OLDEST || messagePolicies.containsValue(OverflowPolicy.DROP_OLDEST))) {
+            throw new IllegalArgumentException("A " + type + " mailbox cannot drop its oldest message");
+        }
+        this.type = type;
+        this.capacity = capacity;
+        this.waitStrategy = waitStrategy;
+        this.overflowPolicy = overflowPolicy;
+        this.messagePolicies = Collections.unmodifiableMap(new HashMap<>(messagePolicies));
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public Map<Class<? extends Message>, OverflowPolicy> getMessagePolicies() {
+        return messagePolicies;
+    }
+
+    Mailbox create(MailboxStats stats) {
+        if (type == Type.RING) {
+            return new RingBufferMailbox(capacity, waitStrategy, overflowPolicy, messagePolicies, stats);
+        }
+        return new LinkedMailbox(capacity, overflowPolicy, messagePolicies, stats);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(type).append("(capacity=").append(capacity).append(", wait=").append(waitStrategy).append(", overflow=").append(overflowPolicy);
+        for (Map.Entry<Class<? extends Message>, OverflowPolicy> entry : messagePolicies.entrySet()) {
+            builder.append(", ").append(entry.getKey().getSimpleName()).append('=').append(entry.getValue());
+        }
+        return builder.append(')').toString();
+    }
+}
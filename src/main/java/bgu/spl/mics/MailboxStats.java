@@ -0,0 +1,55 @@
+package bgu.spl.mics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts what the overflow policies did to the messages sent to one micro-service.
+ * The counters survive the micro-service, so they can be read after the run.
+ */
+public final class MailboxStats {
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @return the number of messages dropped because the mailbox was full.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of sends that had to wait for room.
+     */
+    public long getBlocked() {
+        return blocked.get();
+    }
+
+    /**
+     * @return the number of waiting messages replaced by a newer one of their class.
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    void incrementDropped() {
+        dropped.incrementAndGet();
+    }
+
+    void incrementDropped(int count) {
+        dropped.addAndGet(count);
+    }
+
+    void incrementBlocked() {
+        blocked.incrementAndGet();
+    }
+
+    void incrementCoalesced() {
+        coalesced.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return "MailboxStats{dropped=" + dropped + ", blocked=" + blocked + ", coalesced=" + coalesced + '}';
+    }
+}
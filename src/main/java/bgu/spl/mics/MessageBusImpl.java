@@ -1,27 +1,100 @@
 package bgu.spl.mics;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.function.ToIntFunction;
 
 /**
  * The {@link MessageBusImpl} class is the implementation of the MessageBus interface.
- * Only one public method (in addition to getters which can be public solely for unit testing) may be added to this class.
- * All other methods and members you add to the class must be private.
+ * Besides the interface and {@link #getInstance()}, its public methods are:
+ * <ul>
+ * <li>sending in bulk or without a reply: {@link #sendEvents(List)}, {@link #sendEventsNoReply(List)},
+ *     {@link #sendEventNoReply(Event)} and {@link #sendBroadcasts(List)};</li>
+ * <li>taking a batch of messages: {@link #awaitMessages(MicroService, List)} and {@link #setMaxBatch(int)};</li>
+ * <li>configuration, set before the micro-services start: {@link #setEventRouter(Class, EventRouter)}
+ *     and {@link #configureMailboxes(MailboxSpec, Map)};</li>
+ * <li>{@link #awaitQuiescence()} and {@link #isQuiescent()} for the clock, {@link #awaitUnregistered(Class)}
+ *     for the micro-service that ends the run, and getters for monitoring and unit tests.</li>
+ * </ul>
+ * Everything else is private, or package-private for {@link MicroService} and the tests.
  */
 public class MessageBusImpl implements MessageBus {
-    private final ConcurrentHashMap<MicroService, BlockingQueue<Message>> microserviceQueues;
-    private final ConcurrentHashMap<Class<? extends Message>, LinkedBlockingQueue<MicroService>> subscriptions;
-    private final ConcurrentHashMap<Event<?>, Future<?>> eventFutures;
+    private final ConcurrentHashMap<MicroService, Inbox> microserviceQueues;
+    private final ConcurrentHashMap<Class<? extends Message>, Subscribers> subscriptions;
 
     private static class MessageBusHolder {
         private static final MessageBusImpl INSTANCE = new MessageBusImpl();
     }
 
+    /**
+     * The subscribers of a single message type.
+     * The array is never modified after it is published, subscribe and unregister
+     * build a new array and swap it in, so senders can read it without locking.
+     */
+    private static final class Subscribers {
+        private static final MicroService[] EMPTY = new MicroService[0];
+
+        private volatile MicroService[] services = EMPTY;
+        private volatile EventRouter router = RoutingPolicy.ROUND_ROBIN.newRouter();
+
+        private MicroService[] snapshot() {
+            return services;
+        }
+
+        private synchronized void add(MicroService m) {
+            MicroService[] current = services;
+            for (MicroService s : current) {
+                if (s == m) {
+                    return;
+                }
+            }
+            MicroService[] updated = new MicroService[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = m;
+            services = updated;
+        }
+
+        private synchronized void remove(MicroService m) {
+            MicroService[] current = services;
+            int index = -1;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == m) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return;
+            }
+            if (current.length == 1) {
+                services = EMPTY;
+                return;
+            }
+            MicroService[] updated = new MicroService[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            services = updated;
+        }
+    }
+
+    private static final int DEFAULT_MAX_BATCH = 64;
+
+    private final ToIntFunction<MicroService> queueDepth = this::queueDepth;
+    private volatile int maxBatch = DEFAULT_MAX_BATCH;
+    private volatile MailboxSpec defaultMailbox = MailboxSpec.DEFAULT;
+    private volatile Map<String, MailboxSpec> serviceMailboxes = Collections.emptyMap();
+    private final ConcurrentHashMap<String, MailboxStats> mailboxStats = new ConcurrentHashMap<>();
+    private final QuiescenceTracker quiescence = new QuiescenceTracker();
+
     private MessageBusImpl() {
         microserviceQueues = new ConcurrentHashMap<>();
         subscriptions = new ConcurrentHashMap<>();
-        eventFutures = new ConcurrentHashMap<>();
     }
 
     public static MessageBusImpl getInstance() {
@@ -30,119 +103,398 @@ public class MessageBusImpl implements MessageBus {
 
     @Override
     public <T> void subscribeEvent(Class<? extends Event<T>> type, MicroService m) {
-        subscriptions.putIfAbsent(type, new LinkedBlockingQueue<>());
-        synchronized (subscriptions.get(type)) {
-            subscriptions.get(type).offer(m); // Add the subscriber
-        }
+        subscribe(type, m);
     }
 
     @Override
     public void subscribeBroadcast(Class<? extends Broadcast> type, MicroService m) {
-        subscriptions.putIfAbsent(type, new LinkedBlockingQueue<>());
-        synchronized (subscriptions.get(type)) {
-            subscriptions.get(type).offer(m); // Add the subscriber
-        }
+        subscribe(type, m);
+    }
+
+    private void subscribe(Class<? extends Message> type, MicroService m) {
+        subscriptions.computeIfAbsent(type, t -> new Subscribers()).add(m);
     }
 
+    /**
+     * Completes {@code e} for a caller that does not know which micro-service took
+     * it, by asking every registered one. {@link MicroService#complete(Event, Object)}
+     * asks its own inbox directly.
+     */
     @Override
     public <T> void complete(Event<T> e, T result) {
-        @SuppressWarnings("unchecked")
-        Future<T> future = (Future<T>) eventFutures.remove(e);
-        if (future != null) {
-            future.resolve(result);
+        for (Inbox inbox : microserviceQueues.values()) {
+            if (inbox.complete(e, result)) {
+                return;
+            }
         }
     }
 
     @Override
     public void sendBroadcast(Broadcast b) {
-        Class<? extends Broadcast> type = b.getClass();
-        LinkedBlockingQueue<MicroService> subscribers;
-        synchronized (subscriptions) {
-            subscribers = subscriptions.get(type);
-        }
-
-        if (subscribers != null) {
-            synchronized (subscribers) {
-                for (MicroService m : subscribers) {
-                    BlockingQueue<Message> queue = microserviceQueues.get(m);
-                    if (queue != null) {
-                        queue.offer(b);
-                    }
-                }
+        Subscribers subscribers = subscriptions.get(b.getClass());
+        if (subscribers == null) {
+            return;
+        }
+
+        for (MicroService m : subscribers.snapshot()) {
+            Inbox inbox = microserviceQueues.get(m);
+            if (inbox != null) {
+                inbox.offer(b);
             }
         }
     }
 
     @Override
     public <T> Future<T> sendEvent(Event<T> e) {
-        @SuppressWarnings("unchecked")
-        Class<? extends Event<T>> type = (Class<? extends Event<T>>) e.getClass();
-        LinkedBlockingQueue<MicroService> subscribers;
+        Future<T> future = new Future<>();
+        return route(new Envelope(e, future)) ? future : null;
+    }
+
+    /**
+     * Sends {@code e} like {@link #sendEvent(Event)} for a sender that does not need
+     * its result: the event goes to the queue as is, no {@link Future} is created and
+     * completing it does nothing.
+     * <p>
+     * @param e The event to send.
+     * @return true if a micro-service has subscribed to {@code e.getClass()} and the
+     *         event was added to its queue.
+     */
+    public boolean sendEventNoReply(Event<?> e) {
+        return route(e);
+    }
 
-        synchronized (subscriptions) {
-            subscribers = subscriptions.get(type);
+    /**
+     * Adds an event, in an {@link Envelope} or on its own, to the queue of the
+     * handler it is routed to.
+     * @return false if nobody subscribed to the event or the handler dropped it.
+     */
+    private boolean route(Message entry) {
+        Subscribers subscribers = subscriptions.get(eventType(entry));
+        if (subscribers == null) {
+            return false;
         }
 
-        if (subscribers == null || subscribers.isEmpty()) {
-            return null;
+        MicroService[] services = subscribers.snapshot();
+        if (services.length == 0) {
+            return false;
         }
 
-        MicroService m;
-        synchronized (subscribers) {
-            m = subscribers.poll();
-            if (m != null) {
-                subscribers.offer(m);
+        MicroService m = services[subscribers.router.select(services, queueDepth)];
+        Inbox inbox = microserviceQueues.get(m);
+        return inbox != null && inbox.offer(entry);
+    }
+
+    private static Class<?> eventType(Message entry) {
+        return entry instanceof Envelope ? ((Envelope) entry).event.getClass() : entry.getClass();
+    }
+
+    /**
+     * Sends all of {@code events} like {@link #sendEvent(Event)}, looking up the
+     * subscribers once per run of events of the same type and adding the events
+     * that go to the same micro-service to its queue in a single operation.
+     * <p>
+     * @param events The events to send.
+     * @return the future of every event, in the order of {@code events}, null for
+     *         events nobody subscribed to or that were dropped.
+     */
+    public <T> List<Future<T>> sendEvents(List<? extends Event<T>> events) {
+        List<Future<T>> futures = new ArrayList<>(events.size());
+        sendAll(events, futures);
+        return futures;
+    }
+
+    /**
+     * Sends all of {@code events} like {@link #sendEvents(List)} for a sender that
+     * does not need their results, see {@link #sendEventNoReply(Event)}.
+     * <p>
+     * @param events The events to send.
+     * @return the number of events that were added to the queue of a handler.
+     */
+    public int sendEventsNoReply(List<? extends Event<?>> events) {
+        return sendAll(events, null);
+    }
+
+    /**
+     * @param futures The list the future of every event is appended to, or null to
+     *                send the events without futures.
+     * @return the number of events that were added to the queue of a handler.
+     */
+    private <T> int sendAll(List<? extends Event<?>> events, List<Future<T>> futures) {
+        Map<MicroService, List<Message>> shares = new HashMap<>();
+        Class<?> type = null;
+        Subscribers subscribers = null;
+        int sent = 0;
+        for (Event<?> e : events) {
+            if (e.getClass() != type) {
+                type = e.getClass();
+                subscribers = subscriptions.get(type);
             }
+            MicroService[] services = subscribers == null ? null : subscribers.snapshot();
+            if (services == null || services.length == 0) {
+                if (futures != null) {
+                    futures.add(null);
+                }
+                continue;
+            }
+            MicroService m = services[subscribers.router.select(services, queueDepth)];
+            Message entry = e;
+            if (futures != null) {
+                Future<T> future = new Future<>();
+                futures.add(future);
+                entry = new Envelope(e, future);
+            }
+            shares.computeIfAbsent(m, service -> new ArrayList<>()).add(entry);
+            sent++;
         }
 
-        if (m != null) {
-            BlockingQueue<Message> queue = microserviceQueues.get(m);
-            if (queue != null) {
-                Future<T> future = new Future<>();
-                eventFutures.put(e, future);
-                queue.offer(e);
-                return future;
+        List<Message> rejected = new ArrayList<>();
+        for (Map.Entry<MicroService, List<Message>> share : shares.entrySet()) {
+            Inbox inbox = microserviceQueues.get(share.getKey());
+            if (inbox == null) {
+                rejected.addAll(share.getValue());
+                sent -= share.getValue().size();
+            } else {
+                sent -= share.getValue().size() - inbox.offerAll(share.getValue(), rejected);
+            }
+        }
+        if (futures != null && !rejected.isEmpty()) {
+            Set<Future<?>> dropped = new HashSet<>();
+            for (Message envelope : rejected) {
+                dropped.add(((Envelope) envelope).future);
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                if (dropped.contains(futures.get(i))) {
+                    futures.set(i, null);
+                }
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Sends all of {@code broadcasts} like {@link #sendBroadcast(Broadcast)}, adding
+     * the broadcasts that go to the same micro-service to its queue in a single
+     * operation.
+     * <p>
+     * @param broadcasts The broadcasts to send, every subscriber gets them in this order.
+     */
+    public void sendBroadcasts(List<? extends Broadcast> broadcasts) {
+        Map<MicroService, List<Message>> shares = new HashMap<>();
+        for (Broadcast b : broadcasts) {
+            Subscribers subscribers = subscriptions.get(b.getClass());
+            if (subscribers == null) {
+                continue;
+            }
+            for (MicroService m : subscribers.snapshot()) {
+                shares.computeIfAbsent(m, service -> new ArrayList<>()).add(b);
+            }
+        }
+        List<Message> dropped = new ArrayList<>();
+        for (Map.Entry<MicroService, List<Message>> share : shares.entrySet()) {
+            Inbox inbox = microserviceQueues.get(share.getKey());
+            if (inbox != null) {
+                inbox.offerAll(share.getValue(), dropped);
             }
         }
-        return null;
+    }
+
+    /**
+     * Sets the router that picks the handler of every {@link Event} of type
+     * {@code type}. Events without a router of their own are sent in a round-robin
+     * fashion.
+     * <p>
+     * @param type   The event type to route.
+     * @param router The router to use for {@code type}, see {@link RoutingPolicy}.
+     */
+    public void setEventRouter(Class<? extends Event<?>> type, EventRouter router) {
+        subscriptions.computeIfAbsent(type, t -> new Subscribers()).router = router;
+    }
+
+    private int queueDepth(MicroService m) {
+        Inbox inbox = microserviceQueues.get(m);
+        return inbox == null ? Integer.MAX_VALUE : inbox.depth();
+    }
+
+    /**
+     * Sets the mailboxes allocated by {@link #register(MicroService)} from now on.
+     * A micro-service gets the entry of {@code perService} under its name, or else
+     * the entry under the simple name of its class, or else {@code defaultSpec}.
+     * <p>
+     * @param defaultSpec The mailbox of micro-services without an entry of their own.
+     * @param perService  Mailboxes by micro-service name or class simple name.
+     */
+    public void configureMailboxes(MailboxSpec defaultSpec, Map<String, MailboxSpec> perService) {
+        this.serviceMailboxes = Collections.unmodifiableMap(new HashMap<>(perService));
+        this.defaultMailbox = defaultSpec;
+    }
+
+    private MailboxSpec mailboxSpecOf(MicroService m) {
+        Map<String, MailboxSpec> perService = serviceMailboxes;
+        MailboxSpec spec = perService.get(m.getName());
+        if (spec == null) {
+            spec = perService.get(m.getClass().getSimpleName());
+        }
+        return spec != null ? spec : defaultMailbox;
     }
 
     @Override
     public void register(MicroService m) {
+        register(m, false);
+    }
+
+    /**
+     * Registers {@code m} like {@link #register(MicroService)}.
+     * <p>
+     * @param clock True for the micro-service that waits in {@link #awaitQuiescence()},
+     *              whose own messages are not counted.
+     */
+    void register(MicroService m, boolean clock) {
         System.out.println("Registering MicroService: " + m.getClass().getName());
-        microserviceQueues.putIfAbsent(m, new LinkedBlockingQueue<>());
+        microserviceQueues.computeIfAbsent(m, service -> new Inbox(
+            mailboxSpecOf(service).create(mailboxStats.computeIfAbsent(service.getName(), name -> new MailboxStats())),
+            clock ? null : quiescence));
+    }
+
+    /**
+     * Waits until every message sent to a micro-service other than the clock was
+     * handled, including the messages sent while handling them. Until the clock sends
+     * another message, the system stays idle.
+     * <p>
+     * Only one thread may wait at a time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void awaitQuiescence() throws InterruptedException {
+        quiescence.await();
+    }
+
+    /**
+     * @return true if {@link #awaitQuiescence()} would return right away.
+     */
+    public boolean isQuiescent() {
+        return quiescence.unsettled() == 0;
+    }
+
+    /**
+     * @return the inbox of {@code m}, which its event loop keeps for the rest of its run.
+     */
+    Inbox inboxOf(MicroService m) {
+        Inbox inbox = microserviceQueues.get(m);
+        if (inbox == null) {
+            throw new IllegalStateException("MicroService is not registered.");
+        }
+        return inbox;
+    }
+
+    /**
+     * @return the overflow counters of every micro-service that ever registered, by
+     *         name. Micro-services with the same name share their counters.
+     */
+    public Map<String, MailboxStats> getMailboxStats() {
+        return Collections.unmodifiableMap(mailboxStats);
     }
 
-    @SuppressWarnings("unlikely-arg-type")
+    /**
+     * Removes {@code m} from the bus. The events still waiting in its queue are sent
+     * to another subscriber of their type, and the futures of events nobody else can
+     * handle or that {@code m} took but did not complete are resolved with null.
+     */
     @Override
     public void unregister(MicroService m) {
         System.out.println("Unregistering MicroService: " + m.getClass().getName());
-        microserviceQueues.remove(m);
+        for (Subscribers subscribers : subscriptions.values()) {
+            subscribers.remove(m);
+        }
 
-        synchronized (subscriptions) {
-            for (LinkedBlockingQueue<MicroService> subscribers : subscriptions.values()) {
-                synchronized (subscribers) {
-                    subscribers.remove(m);
+        Inbox inbox = microserviceQueues.remove(m);
+        synchronized (microserviceQueues) {
+            microserviceQueues.notifyAll();
+        }
+        if (inbox != null) {
+            for (Message message : inbox.close()) {
+                boolean isEvent = message instanceof Envelope || message instanceof Event;
+                if (isEvent && !route(message) && message instanceof Envelope) {
+                    ((Envelope) message).fail();
                 }
             }
+            // the handed over events are counted by their new inboxes by now
+            inbox.detach();
         }
-
-        eventFutures.entrySet().removeIf(entry -> m.equals(entry.getKey()));
     }
 
     @Override
     public Message awaitMessage(MicroService m) throws InterruptedException {
-        BlockingQueue<Message> queue = microserviceQueues.get(m);
-        if (queue == null) {
-            throw new IllegalStateException("MicroService is not registered.");
+        Inbox inbox = inboxOf(m);
+        return inbox.deliver(inbox.mailbox.take());
+    }
+
+    /**
+     * Takes the next message of {@code m}, waiting until one is available, together
+     * with up to {@link #setMaxBatch(int)} - 1 messages that wait behind it, so a
+     * burst of messages costs a single wakeup.
+     * <p>
+     * @param m     The micro-service requesting to take messages from its message queue.
+     * @param batch The list the messages are appended to, in the order they were sent.
+     * @return the number of messages appended to {@code batch}.
+     * @throws InterruptedException if interrupted while waiting for a message
+     *                              to became available.
+     */
+    public int awaitMessages(MicroService m, List<Message> batch) throws InterruptedException {
+        Inbox inbox = inboxOf(m);
+        int first = batch.size();
+        int taken = inbox.mailbox.takeBatch(batch, maxBatch);
+        for (int i = first; i < batch.size(); i++) {
+            batch.set(i, inbox.deliver(batch.get(i)));
+        }
+        return taken;
+    }
+
+    /**
+     * Like {@link #awaitMessages(MicroService, List)}, but leaves events in their
+     * envelopes for the event loop of the micro-service, see {@link Inbox#begin(Message)}.
+     */
+    int awaitEntries(Inbox inbox, List<Message> batch) throws InterruptedException {
+        return inbox.mailbox.takeBatch(batch, maxBatch);
+    }
+
+    /**
+     * @param maxBatch The maximal number of messages {@link #awaitMessages(MicroService, List)}
+     *                 takes at once, 1 to take them one by one.
+     */
+    public void setMaxBatch(int maxBatch) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("Invalid batch size " + maxBatch);
         }
-        return queue.take();
+        this.maxBatch = maxBatch;
+    }
+
+    /**
+     * Waits until no micro-service of {@code type} is registered, for a micro-service
+     * that may only end after them.
+     * <p>
+     * @param type The micro-services to wait for.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void awaitUnregistered(Class<? extends MicroService> type) throws InterruptedException {
+        synchronized (microserviceQueues) {
+            while (isAnyRegistered(type)) {
+                microserviceQueues.wait();
+            }
+        }
+    }
+
+    private boolean isAnyRegistered(Class<? extends MicroService> type) {
+        for (MicroService microService : microserviceQueues.keySet()) {
+            if (type.isInstance(microService)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public boolean isRegistered(Class<? extends MicroService> type1, MicroService service2) {
         boolean isType1Registered = false;
         boolean isService2QueueEmpty = false;
-    
+
         // Check if any microservice of type1 is still registered
         synchronized (microserviceQueues) {
             for (MicroService microService : microserviceQueues.keySet()) {
@@ -152,13 +504,13 @@ public class MessageBusImpl implements MessageBus {
                 }
             }
         }
-    
+
         // Check if the message queue of service2 is empty
-        BlockingQueue<Message> queue = microserviceQueues.get(service2);
-        if (queue != null) {
-            isService2QueueEmpty = queue.isEmpty();
+        Inbox inbox = microserviceQueues.get(service2);
+        if (inbox != null) {
+            isService2QueueEmpty = inbox.mailbox.isEmpty();
         }
-    
+
         // Return true if no type1 is registered and service2's queue is empty
         return !isType1Registered && isService2QueueEmpty;
     }
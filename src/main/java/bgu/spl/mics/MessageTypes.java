@@ -0,0 +1,31 @@
+package bgu.spl.mics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gives every message class a small dense id the first time it is seen, so a
+ * micro-service can keep its callbacks in an array indexed by the id.
+ * <p>
+ * The id of a class is cached by a {@link ClassValue}, so looking it up again does
+ * not hash or lock.
+ */
+final class MessageTypes {
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private static final ClassValue<Integer> ids = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return nextId.getAndIncrement();
+        }
+    };
+
+    private MessageTypes() {
+    }
+
+    /**
+     * @return the id of {@code type}, between 0 and the number of classes seen so far.
+     */
+    static int idOf(Class<?> type) {
+        return ids.get(type);
+    }
+}
@@ -1,6 +1,8 @@
 package bgu.spl.mics;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import bgu.spl.mics.application.messages.MicroServiceChangeStateBroadcast;
 import bgu.spl.mics.application.services.FusionSlamService;
@@ -20,15 +22,25 @@ import bgu.spl.mics.application.services.TimeService;
  * message-queue (see {@link MessageBus#register(bgu.spl.mics.MicroService)}
  * method). The abstract MicroService stores this callback together with the
  * type of the message is related to.
- * 
- * Only private fields and methods may be added to this class.
+ * <p>
+ * Besides the single sends, the wrappers cover sending in bulk or without a reply
+ * ({@link #sendEvents(List)}, {@link #sendEventsNoReply(List)}, {@link #sendEventNoReply(Event)},
+ * {@link #sendBroadcasts(List)}), and {@link #awaitQuiescence()} and {@link #isQuiescent()}
+ * for the clock. The event loop runs either on a thread of its own through {@link #run()},
+ * or in slices on a {@link ServiceExecutor} pool through the package-private
+ * {@link #startPooled(Runnable)}, {@link #runSlice(int)} and {@link #hasMessages()}.
  * <p>
  */
 public abstract class MicroService implements Runnable 
 {
     private boolean terminated = false;
     private final String name;
-    private final ConcurrentHashMap<Class<?>,Callback<?>> callBackMap = new ConcurrentHashMap<>(); 
+    // indexed by MessageTypes.idOf, only the thread running the event loop touches it
+    private Callback<?>[] callbacks = new Callback<?>[0];
+    private final List<Message> batch = new ArrayList<>();
+    private Inbox inbox = null;
+    // set when a ServiceExecutor pool runs the event loop instead of a thread of its own
+    private boolean pooled = false;
 
     /**
      * @param name the micro-service name (used mainly for debugging purposes -
@@ -63,7 +75,7 @@ public abstract class MicroService implements Runnable
     protected final <T, E extends Event<T>> void subscribeEvent(Class<E> type, Callback<E> callback) 
     {
         MessageBusImpl.getInstance().subscribeEvent(type, this);
-        callBackMap.put(type, callback);
+        putCallback(type, callback);
     }
 
     /**
@@ -89,7 +101,7 @@ public abstract class MicroService implements Runnable
     protected final <B extends Broadcast> void subscribeBroadcast(Class<B> type, Callback<B> callback) 
     {
         MessageBusImpl.getInstance().subscribeBroadcast(type, this);
-        callBackMap.put(type, callback);
+        putCallback(type, callback);
     }
 
     /**
@@ -109,6 +121,56 @@ public abstract class MicroService implements Runnable
         return MessageBusImpl.getInstance().sendEvent(e);
     }
 
+    /**
+     * Sends the event {@code e} using the message-bus without a {@link Future}, for
+     * events whose result nobody reads. Completing such an event does nothing.
+     * <p>
+     * @param e         The event to send
+     * @return  		true if a micro-service has subscribed to {@code e.getClass()},
+     *         			false otherwise.
+     */
+    protected final boolean sendEventNoReply(Event<?> e)
+    {
+        return MessageBusImpl.getInstance().sendEventNoReply(e);
+    }
+
+    /**
+     * Sends all of {@code events} using the message-bus without futures, adding the
+     * events that go to the same micro-service to its message queue at once.
+     * <p>
+     * @param events    The events to send.
+     * @return          The number of events a micro-service has subscribed to.
+     */
+    protected final int sendEventsNoReply(List<? extends Event<?>> events)
+    {
+        return MessageBusImpl.getInstance().sendEventsNoReply(events);
+    }
+
+    /**
+     * Sends all of {@code events} using the message-bus, adding the events that go to
+     * the same micro-service to its message queue at once.
+     * <p>
+     * @param <T>       The type of the expected result of the events.
+     * @param events    The events to send.
+     * @return          A {@link Future<T>} for every event, in the same order,
+     *                  null for events no micro-service has subscribed to.
+     */
+    protected final <T> List<Future<T>> sendEvents(List<? extends Event<T>> events)
+    {
+        return MessageBusImpl.getInstance().sendEvents(events);
+    }
+
+    /**
+     * A Micro-Service calls this method in order to send the broadcast messages {@code broadcasts}
+     * using the message-bus to all the services subscribed to them, in order.
+     * <p>
+     * @param broadcasts The broadcast messages to send
+     */
+    protected final void sendBroadcasts(List<? extends Broadcast> broadcasts)
+    {
+        MessageBusImpl.getInstance().sendBroadcasts(broadcasts);
+    }
+
     /**
      * A Micro-Service calls this method in order to send the broadcast message {@code b} using the message-bus
      * to all the services subscribed to it.
@@ -120,6 +182,27 @@ public abstract class MicroService implements Runnable
         MessageBusImpl.getInstance().sendBroadcast(b);
     }
 
+    /**
+     * Waits until every message sent to the other micro-services was handled, together
+     * with the messages sent while handling them, see {@link MessageBusImpl#awaitQuiescence()}.
+     * Only meant for the {@link TimeService}, whose own messages are not waited for.
+     * <p>
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    protected final void awaitQuiescence() throws InterruptedException
+    {
+        MessageBusImpl.getInstance().awaitQuiescence();
+    }
+
+    /**
+     * @return true if every message sent to the other micro-services was handled, see
+     *         {@link #awaitQuiescence()}, without waiting for it.
+     */
+    protected final boolean isQuiescent()
+    {
+        return MessageBusImpl.getInstance().isQuiescent();
+    }
+
     /**
      * Completes the received request {@code e} with the result {@code result}
      * using the message-bus.
@@ -132,7 +215,10 @@ public abstract class MicroService implements Runnable
      */
     protected final <T> void complete(Event<T> e, T result)
     {
-        MessageBusImpl.getInstance().complete(e, result);
+        // events are almost always completed by the service that took them
+        if (inbox == null || !inbox.completeOwn(e, result)) {
+            MessageBusImpl.getInstance().complete(e, result);
+        }
     }
 
     /**
@@ -145,7 +231,10 @@ public abstract class MicroService implements Runnable
      * message.
      */
     protected final void terminate() {
-        if (!terminated) {
+        if (pooled) {
+            // the pool thread is shared, the slice ends once the callback returns
+            terminated = true;
+        } else if (!terminated) {
             Thread.currentThread().interrupt(); // Interrupt the thread to exit blocking calls
         }
     }
@@ -158,6 +247,41 @@ public abstract class MicroService implements Runnable
         return name;
     }
 
+    private void putCallback(Class<?> type, Callback<?> callback)
+    {
+        int id = MessageTypes.idOf(type);
+        if (id >= callbacks.length) {
+            callbacks = Arrays.copyOf(callbacks, id + 1);
+        }
+        callbacks[id] = callback;
+    }
+
+    private void dispatch(Message entry)
+    {
+        Message m = inbox.begin(entry);
+        try {
+            // Fetch the corresponding callback for the message type
+            int id = MessageTypes.idOf(m.getClass());
+            @SuppressWarnings("unchecked")
+            Callback<Message> callback = id < callbacks.length ? (Callback<Message>) callbacks[id] : null;
+
+            // If a callback is registered, invoke it
+            if (callback != null) {
+                callback.call(m);
+            } else {
+                // Optional: Log an error or warning if no callback is registered for the message type
+                System.err.println("No callback registered for message: " + m.getClass());
+            }
+        } finally {
+            inbox.end();
+            // After terminate() the message stays unsettled until the micro-service is
+            // unregistered, so what finish() sends is waited for as part of it
+            if (!terminated && !Thread.currentThread().isInterrupted()) {
+                inbox.settled(1);
+            }
+        }
+    }
+
     /**
      * The entry point of the micro-service. TODO: you must complete this code
      * otherwise you will end up in an infinite loop.
@@ -166,29 +290,12 @@ public abstract class MicroService implements Runnable
     public final void run() 
     {
         try {
-            MessageBusImpl.getInstance().register(this); // Register the microservice with the MessageBus
-            initialize(); // Initialize the microservice-specific logic
-            if(! (this instanceof FusionSlamService || this instanceof TimeService))
-            {
-                this.sendBroadcast(new MicroServiceChangeStateBroadcast(this,false));
-            }
+            start();
             while (!terminated) {
-                // Wait for the next message from the MessageBus
-                Message m = MessageBusImpl.getInstance().awaitMessage(this);
-                
-                if (m != null) {
-                    // Fetch the corresponding callback for the message type
-                    @SuppressWarnings("unchecked")
-                    Callback<Message> callback = (Callback<Message>) callBackMap.get(m.getClass());
-                    
-                    // If a callback is registered, invoke it
-                    if (callback != null) {
-                        callback.call(m);
-                    } else {
-                        // Optional: Log an error or warning if no callback is registered for the message type
-                        System.err.println("No callback registered for message: " + m.getClass());
-                    }
-                }
+                // Wait for the next messages from the MessageBus
+                batch.clear();
+                MessageBusImpl.getInstance().awaitEntries(inbox, batch);
+                dispatchBatch();
             }
         } catch (InterruptedException e) 
         {
@@ -196,11 +303,110 @@ public abstract class MicroService implements Runnable
         }
         finally
         {
-            if(! (this instanceof FusionSlamService || this instanceof TimeService))
-            {
-                this.sendBroadcast(new MicroServiceChangeStateBroadcast(this,true));
-            }
-            MessageBusImpl.getInstance().unregister(this);
+            finish();
+        }
+    }
+
+    /**
+     * Starts the micro-service for a pool that runs its event loop in slices, see
+     * {@link #runSlice(int)}. {@code signal} is run whenever a message is added to its
+     * queue from now on, the caller checks {@link #hasMessages()} for earlier ones.
+     * @return false if the micro-service terminated during its initialization.
+     */
+    boolean startPooled(Runnable signal)
+    {
+        pooled = true;
+        try {
+            start();
+        } catch (RuntimeException | Error ex) {
+            terminated = true;
+            finish();
+            throw ex;
+        }
+        if (terminated) {
+            finish();
+            return false;
+        }
+        inbox.mailbox.setSignal(signal);
+        return true;
+    }
+
+    /**
+     * Handles up to {@code maxMessages} messages that are waiting in the queue,
+     * without waiting for more.
+     * @return false if the micro-service terminated and was unregistered.
+     */
+    boolean runSlice(int maxMessages)
+    {
+        if (terminated) {
+            return false;
+        }
+        try {
+            batch.clear();
+            inbox.mailbox.pollBatch(batch, maxMessages);
+            dispatchBatch();
+        } catch (RuntimeException | Error ex) {
+            terminated = true;
+            finish();
+            throw ex;
+        }
+        if (terminated) {
+            finish();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if messages wait in the queue of a started micro-service.
+     */
+    boolean hasMessages()
+    {
+        // may be called while another slice finishes the micro-service
+        Inbox current = inbox;
+        return current != null && !current.mailbox.isEmpty();
+    }
+
+    private void start()
+    {
+        MessageBusImpl.getInstance().register(this, this instanceof TimeService); // Register the microservice with the MessageBus
+        this.inbox = MessageBusImpl.getInstance().inboxOf(this);
+        // unsettled until the initialization and its messages are sent
+        inbox.arrived(1);
+        initialize(); // Initialize the microservice-specific logic
+        if(! (this instanceof FusionSlamService || this instanceof TimeService))
+        {
+            this.sendBroadcast(new MicroServiceChangeStateBroadcast(this,false));
+        }
+        if (!terminated && !Thread.currentThread().isInterrupted()) {
+            inbox.settled(1);
+        }
+    }
+
+    private void dispatchBatch()
+    {
+        // Once a callback called terminate(), the rest of the batch is left unhandled,
+        // just like the messages still waiting in the queue
+        int handled = 0;
+        while (handled < batch.size() && !terminated && !Thread.currentThread().isInterrupted()) {
+            // the routers count the rest of the batch as waiting
+            inbox.setUndispatched(batch.size() - handled - 1);
+            dispatch(batch.get(handled++));
+        }
+        inbox.setUndispatched(0);
+        if (handled < batch.size()) {
+            inbox.keepUndelivered(batch.subList(handled, batch.size()));
+        }
+    }
+
+    private void finish()
+    {
+        batch.clear();
+        inbox = null;
+        if(! (this instanceof FusionSlamService || this instanceof TimeService))
+        {
+            this.sendBroadcast(new MicroServiceChangeStateBroadcast(this,true));
         }
+        MessageBusImpl.getInstance().unregister(this);
     }
 }
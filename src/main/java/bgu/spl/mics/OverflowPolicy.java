@@ -0,0 +1,34 @@
+package bgu.spl.mics;
+
+/**
+ * What a bounded mailbox does with a message that arrives while it is full.
+ * The policy may differ per message class, see {@link MailboxSpec}.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The sender waits until the owner has taken a message.
+     */
+    BLOCK,
+
+    /**
+     * The oldest waiting message that may be dropped is dropped to make room. Messages
+     * whose own policy is {@link #BLOCK} are kept; if only those wait, the arriving
+     * message is dropped, like with {@link #DROP_NEWEST}.
+     * Only {@link MailboxSpec.Type#LINKED} mailboxes support it.
+     */
+    DROP_OLDEST,
+
+    /**
+     * The arriving message is dropped.
+     */
+    DROP_NEWEST,
+
+    /**
+     * A waiting message of the same class is replaced by the arriving one, which
+     * takes its place in the queue. This applies whether the mailbox is full or not,
+     * so the owner only ever sees the latest message of the class. If no message of
+     * the class is waiting and the mailbox is full, the arriving one is dropped.
+     */
+    COALESCE
+}
@@ -0,0 +1,72 @@
+package bgu.spl.mics;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Counts the messages that were added to the mailbox of a micro-service and not
+ * settled yet, over the whole bus. A message is settled once the callback that
+ * handled it returned, or once it was dropped.
+ * <p>
+ * A message is counted before it can be taken and settled only after its callback,
+ * so the messages a callback sends are counted before the one that caused them is
+ * settled. Once the count reaches zero, it stays there until somebody outside a
+ * callback sends a message, which makes it a tick barrier for a clock.
+ */
+final class QuiescenceTracker {
+    private final AtomicLong unsettled = new AtomicLong();
+    private volatile Thread waiter = null;
+
+    void add(long count) {
+        if (unsettled.addAndGet(count) == 0) {
+            Thread current = waiter;
+            if (current != null) {
+                LockSupport.unpark(current);
+            }
+        }
+    }
+
+    /**
+     * @return the number of messages that are counted and not settled yet.
+     */
+    long unsettled() {
+        return unsettled.get();
+    }
+
+    /**
+     * Waits until every counted message is settled. Only one thread may wait at a time.
+     * A {@link ForkJoinPool} worker waits as a managed blocker, so the pool adds a thread
+     * for the micro-services whose messages it waits for.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     */
+    void await() throws InterruptedException {
+        if (unsettled.get() == 0) {
+            return;
+        }
+        waiter = Thread.currentThread();
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() throws InterruptedException {
+                    // waiter is set before the count is read again, so the thread that brings it
+                    // to zero either is seen here or sees the waiter
+                    while (unsettled.get() != 0) {
+                        LockSupport.park(QuiescenceTracker.this);
+                        if (Thread.interrupted()) {
+                            throw new InterruptedException();
+                        }
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return unsettled.get() == 0;
+                }
+            });
+        } finally {
+            waiter = null;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package bgu.spl.mics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+/**
+ * A bounded {@link Mailbox} for many senders and a single owner, backed by an array
+ * that is allocated once.
+ * <p>
+ * Every slot carries a sequence number. A sender claims the slot at {@code tail} by
+ * a compare-and-set of the tail, stores the message and publishes it by advancing
+ * the slot sequence. The owner takes the message at {@code head} once the sequence
+ * says it was published and hands the slot back to the senders one lap ahead.
+ * <p>
+ * The slots are rounded up to a power of two, but a sender only claims a slot while
+ * fewer than {@code capacity} messages wait, so the ring never holds more than asked for.
+ */
+final class RingBufferMailbox extends AbstractMailbox {
+    private static final int SPINS_BEFORE_PARK = 100;
+    private static final long SENDER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final int mask;
+    private final int capacity;
+    private final AtomicReferenceArray<Message> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final WaitStrategy waitStrategy;
+    private volatile Thread waitingOwner = null;
+
+    /**
+     * @param capacity       The maximal number of waiting messages.
+     * @param waitStrategy   How the owner waits when empty and senders wait when full.
+     * @param overflowPolicy What to do with messages that arrive when it is full,
+     *                       anything but {@link OverflowPolicy#DROP_OLDEST}.
+     * @param policies       Overflow policies of specific message classes.
+     * @param stats          Where to count dropped, blocked and coalesced messages.
+     */
+    RingBufferMailbox(int capacity, WaitStrategy waitStrategy, OverflowPolicy overflowPolicy, Map<Class<? extends Message>, OverflowPolicy> policies, MailboxStats stats) {
+        super(true, overflowPolicy, policies, stats);
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.waitStrategy = waitStrategy;
+    }
+
+    @Override
+    boolean tryOffer(Message m) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            // head only grows, so a stale head is on the full side
+            if (position - head.get() >= capacity) {
+                return false;
+            }
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.set(index, m);
+                    // volatile store, so the read of waitingOwner below cannot move above it
+                    sequences.set(index, position + 1);
+                    Thread owner = waitingOwner;
+                    if (owner != null) {
+                        LockSupport.unpark(owner);
+                    }
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Waits for room. The owner does not know who is waiting, so senders back off
+     * with short parks instead of being woken up.
+     * An interrupt does not abort the wait, it is restored once the message is in.
+     */
+    @Override
+    boolean put(Message m) {
+        boolean interrupted = Thread.interrupted();
+        try {
+            int spins = 0;
+            while (!isClosed()) {
+                if (tryOffer(m)) {
+                    return true;
+                }
+                if (waitStrategy == WaitStrategy.YIELD) {
+                    Thread.yield();
+                } else if (waitStrategy == WaitStrategy.SPIN_THEN_PARK && spins++ < SPINS_BEFORE_PARK) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(this, SENDER_PARK_NANOS);
+                    interrupted |= Thread.interrupted();
+                }
+            }
+            return false;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Only the owner may take from the ring, so senders cannot drop the oldest message.
+     */
+    @Override
+    Message pollOldest(Predicate<Message> droppable) {
+        throw new UnsupportedOperationException("A ring mailbox cannot drop its oldest message");
+    }
+
+    private Message poll() {
+        long position = head.get();
+        int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        Message m = slots.get(index);
+        slots.lazySet(index, null);
+        sequences.lazySet(index, position + mask + 1);
+        head.lazySet(position + 1);
+        return m;
+    }
+
+    @Override
+    Message takeNext() throws InterruptedException {
+        int spins = 0;
+        while (true) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            Message m = poll();
+            if (m != null) {
+                return m;
+            }
+            if (waitStrategy == WaitStrategy.YIELD) {
+                Thread.yield();
+            } else if (waitStrategy == WaitStrategy.SPIN_THEN_PARK && spins++ < SPINS_BEFORE_PARK) {
+                Thread.onSpinWait();
+            } else {
+                waitingOwner = Thread.currentThread();
+                // a sender that published before it could see waitingOwner is caught here
+                m = poll();
+                if (m == null) {
+                    LockSupport.park(this);
+                }
+                waitingOwner = null;
+                if (m != null) {
+                    return m;
+                }
+            }
+        }
+    }
+
+    @Override
+    void drainNext(List<Message> batch, int maxEntries) {
+        for (int i = 0; i < maxEntries; i++) {
+            Message m = poll();
+            if (m == null) {
+                return;
+            }
+            batch.add(m);
+        }
+    }
+
+    @Override
+    int queuedEntries() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+}
@@ -0,0 +1,112 @@
+package bgu.spl.mics;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+/**
+ * The {@link EventRouter}s that come with the framework.
+ * The policy of an event type can be chosen in the configuration file by the
+ * name of the constant.
+ */
+public enum RoutingPolicy {
+
+    /**
+     * Every subscriber gets the next event in turn. This is the default.
+     */
+    ROUND_ROBIN {
+        @Override
+        public EventRouter newRouter() {
+            return new RoundRobinRouter();
+        }
+    },
+
+    /**
+     * The subscriber with the fewest messages waiting gets the event, counting both its
+     * queue and the rest of the batch it is working through.
+     * Ties are broken in round-robin order so idle subscribers share the load.
+     */
+    LEAST_LOADED {
+        @Override
+        public EventRouter newRouter() {
+            return new LeastLoadedRouter();
+        }
+    },
+
+    /**
+     * Two random subscribers are sampled and the less loaded one gets the event.
+     * Close to {@link #LEAST_LOADED} in balance, but it looks at two queues instead
+     * of all of them.
+     */
+    POWER_OF_TWO_CHOICES {
+        @Override
+        public EventRouter newRouter() {
+            return new PowerOfTwoChoicesRouter();
+        }
+    };
+
+    /**
+     * @return a new router of this policy, to be used for a single event type.
+     */
+    public abstract EventRouter newRouter();
+
+    /**
+     * @param name The name of a constant, in any case.
+     * @return the policy called {@code name}.
+     * @throws IllegalArgumentException if there is no such policy.
+     */
+    public static RoutingPolicy fromName(String name) {
+        for (RoutingPolicy policy : values()) {
+            if (policy.name().equalsIgnoreCase(name.trim())) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown routing policy " + name + ", expected one of " + Arrays.toString(values()));
+    }
+
+    private static final class RoundRobinRouter implements EventRouter {
+        private final AtomicInteger cursor = new AtomicInteger();
+
+        @Override
+        public int select(MicroService[] subscribers, ToIntFunction<MicroService> queueDepth) {
+            return (cursor.getAndIncrement() & Integer.MAX_VALUE) % subscribers.length;
+        }
+    }
+
+    private static final class LeastLoadedRouter implements EventRouter {
+        private final AtomicInteger cursor = new AtomicInteger();
+
+        @Override
+        public int select(MicroService[] subscribers, ToIntFunction<MicroService> queueDepth) {
+            int start = (cursor.getAndIncrement() & Integer.MAX_VALUE) % subscribers.length;
+            int best = start;
+            int bestDepth = queueDepth.applyAsInt(subscribers[start]);
+            for (int i = 1; i < subscribers.length && bestDepth > 0; i++) {
+                int index = (start + i) % subscribers.length;
+                int depth = queueDepth.applyAsInt(subscribers[index]);
+                if (depth < bestDepth) {
+                    best = index;
+                    bestDepth = depth;
+                }
+            }
+            return best;
+        }
+    }
+
+    private static final class PowerOfTwoChoicesRouter implements EventRouter {
+        @Override
+        public int select(MicroService[] subscribers, ToIntFunction<MicroService> queueDepth) {
+            if (subscribers.length == 1) {
+                return 0;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(subscribers.length);
+            int second = random.nextInt(subscribers.length - 1);
+            if (second >= first) {
+                second++;
+            }
+            return queueDepth.applyAsInt(subscribers[second]) < queueDepth.applyAsInt(subscribers[first]) ? second : first;
+        }
+    }
+}
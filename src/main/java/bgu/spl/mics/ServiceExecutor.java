@@ -0,0 +1,153 @@
+package bgu.spl.mics;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Starts the event loops of micro-services in an {@link ExecutionMode} and lets the
+ * caller wait for them to end.
+ * <p>
+ * Virtual threads are created through reflection, so the code still builds and runs
+ * on runtimes that do not have them.
+ */
+public final class ServiceExecutor {
+    // messages a pooled micro-service handles before it gives its thread back
+    private static final int SLICE_MESSAGES = 64;
+
+    private final ExecutionMode mode;
+    private final ThreadFactory virtualThreads;
+    private final ForkJoinPool pool;
+    private final ConcurrentHashMap<MicroService, CountDownLatch> running = new ConcurrentHashMap<>();
+
+    private ServiceExecutor(ExecutionMode mode, ThreadFactory virtualThreads, ForkJoinPool pool) {
+        this.mode = mode;
+        this.virtualThreads = virtualThreads;
+        this.pool = pool;
+    }
+
+    /**
+     * @param requested The execution mode to use if this runtime supports it.
+     * @return an executor for {@code requested}, or for {@link ExecutionMode#PLATFORM}
+     *         if it is not supported.
+     */
+    public static ServiceExecutor create(ExecutionMode requested) {
+        if (requested == ExecutionMode.POOL) {
+            // at least two threads, so a callback that sleeps does not stall everybody else
+            int parallelism = Math.max(2, Runtime.getRuntime().availableProcessors());
+            return new ServiceExecutor(ExecutionMode.POOL, null,
+                new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true));
+        }
+        if (requested == ExecutionMode.VIRTUAL) {
+            ThreadFactory factory = virtualThreadFactory();
+            if (factory != null) {
+                return new ServiceExecutor(ExecutionMode.VIRTUAL, factory, null);
+            }
+            System.err.println("Virtual threads are not available on Java " + System.getProperty("java.version") + ", using platform threads");
+        }
+        return new ServiceExecutor(ExecutionMode.PLATFORM, null, null);
+    }
+
+    /**
+     * @return the mode the micro-services actually run in.
+     */
+    public ExecutionMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Starts the event loop of {@code service}.
+     */
+    public void execute(MicroService service) {
+        CountDownLatch done = new CountDownLatch(1);
+        running.put(service, done);
+        if (pool != null) {
+            pool.execute(new Actor(service, done));
+            return;
+        }
+        Runnable loop = () -> {
+            try {
+                service.run();
+            } finally {
+                done.countDown();
+            }
+        };
+        Thread thread = virtualThreads != null ? virtualThreads.newThread(loop) : new Thread(loop);
+        thread.setName(service.getName());
+        thread.start();
+    }
+
+    /**
+     * Waits until the event loop of {@code service} ended.
+     */
+    public void join(MicroService service) throws InterruptedException {
+        CountDownLatch done = running.get(service);
+        if (done == null) {
+            throw new IllegalArgumentException(service.getName() + " was not started by this executor");
+        }
+        done.await();
+    }
+
+    /**
+     * Runs a micro-service on the pool. The task is submitted once to start the
+     * micro-service and again whenever messages wait while it is not scheduled.
+     * {@code scheduled} is held from submission until the task ends, so the slices of
+     * one micro-service never overlap.
+     */
+    private final class Actor implements Runnable {
+        private final MicroService service;
+        private final CountDownLatch done;
+        // held by the start task from the beginning
+        private final AtomicBoolean scheduled = new AtomicBoolean(true);
+        private boolean started = false;
+
+        Actor(MicroService service, CountDownLatch done) {
+            this.service = service;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            boolean alive = false;
+            try {
+                if (!started) {
+                    started = true;
+                    alive = service.startPooled(this::signal);
+                } else {
+                    alive = service.runSlice(SLICE_MESSAGES);
+                }
+            } finally {
+                if (!alive) {
+                    done.countDown();
+                }
+            }
+            scheduled.set(false);
+            // a message that arrived while scheduled was set did not submit the task
+            if (service.hasMessages()) {
+                signal();
+            }
+        }
+
+        private void signal() {
+            if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+                pool.execute(this);
+            }
+        }
+    }
+
+    /**
+     * @return {@code Thread.ofVirtual().factory()}, or null before Java 21.
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+}
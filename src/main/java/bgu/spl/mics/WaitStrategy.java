@@ -0,0 +1,25 @@
+package bgu.spl.mics;
+
+/**
+ * How a thread waits on a {@link MailboxSpec.Type#RING} mailbox: the owner when the
+ * mailbox is empty, and a sender when it is full and the overflow policy is
+ * {@link OverflowPolicy#BLOCK}.
+ */
+public enum WaitStrategy {
+
+    /**
+     * Park the thread right away. Lowest CPU use, highest wake-up latency.
+     */
+    PARK,
+
+    /**
+     * Spin for a short while and park if nothing arrived by then.
+     */
+    SPIN_THEN_PARK,
+
+    /**
+     * Keep yielding the processor. Lowest latency, but the waiting thread stays
+     * runnable and burns a core when the system is idle.
+     */
+    YIELD
+}
@@ -0,0 +1,209 @@
+package bgu.spl.mics.application;
+
+import java.io.Closeable;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import bgu.spl.mics.application.objects.DetectedObject;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+
+/**
+ * Reads the camera data file with a streaming {@link JsonReader}, building the
+ * {@link StampedDetectedObjects} frames directly instead of a tree of the whole file.
+ * <p>
+ * The file maps every camera key to its frames, either a list of frames or a list of
+ * lists of frames, e.g. {"camera1": [{"time": 2, "detectedObjects": [{"id": "Wall_1",
+ * "description": "Wall"}]}]}.
+ * <p>
+ * {@link #readAll(Reader)} loads the frames of all the cameras at once. An instance reads
+ * the frames of a single camera one at a time, so a {@link bgu.spl.mics.application.objects.Camera}
+ * fed by it only holds the frames it is about to hand out.
+ */
+public class CameraDataReader implements Iterator<StampedDetectedObjects>, Closeable {
+    private final JsonReader reader;
+    // 0 outside the frames of the camera, 1 inside its list, 2 inside a nested list
+    private int depth = 0;
+    private StampedDetectedObjects next = null;
+    private boolean closed = false;
+
+    private CameraDataReader(JsonReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Opens {@code path} and moves to the frames of {@code cameraKey}, skipping the frames
+     * of the other cameras without building them.
+     * @throws IOException if the file cannot be read or is malformed.
+     */
+    public static CameraDataReader open(String path, String cameraKey) throws IOException {
+        CameraDataReader frames = new CameraDataReader(new JsonReader(new FileReader(path)));
+        try {
+            frames.reader.beginObject();
+            while (frames.reader.hasNext()) {
+                if (frames.reader.nextName().equals(cameraKey) && frames.reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    frames.reader.beginArray();
+                    frames.depth = 1;
+                    return frames;
+                }
+                frames.reader.skipValue();
+            }
+        } catch (IOException | RuntimeException ex) {
+            frames.close();
+            throw ex;
+        }
+        // no frames for the camera
+        frames.close();
+        return frames;
+    }
+
+    /**
+     * Reads the frames of every camera in the file.
+     * @return the frames of every camera key, in the order they appear in the file.
+     * @throws IOException if the file cannot be read or is malformed.
+     */
+    public static Map<String, List<StampedDetectedObjects>> readAll(Reader in) throws IOException {
+        Map<String, List<StampedDetectedObjects>> cameraData = new HashMap<>();
+        JsonReader reader = new JsonReader(in);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String cameraKey = reader.nextName();
+            List<StampedDetectedObjects> frames = new ArrayList<>();
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        // a list of lists, flattened
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            frames.add(readFrame(reader));
+                        }
+                        reader.endArray();
+                    } else {
+                        frames.add(readFrame(reader));
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+            cameraData.put(cameraKey, frames);
+        }
+        reader.endObject();
+        return cameraData;
+    }
+
+    /**
+     * @throws JsonIOException if the file cannot be read or is malformed.
+     */
+    @Override
+    public boolean hasNext() {
+        if (next == null && !closed) {
+            try {
+                next = readNext();
+            } catch (IOException ex) {
+                close();
+                throw new JsonIOException(ex);
+            }
+            if (next == null) {
+                close();
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public StampedDetectedObjects next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        StampedDetectedObjects frame = next;
+        next = null;
+        return frame;
+    }
+
+    /**
+     * @return the next frame of the camera, or null once its frames are over.
+     */
+    private StampedDetectedObjects readNext() throws IOException {
+        while (depth > 0) {
+            if (!reader.hasNext()) {
+                reader.endArray();
+                depth--;
+            } else if (reader.peek() == JsonToken.BEGIN_ARRAY && depth == 1) {
+                reader.beginArray();
+                depth++;
+            } else {
+                return readFrame(reader);
+            }
+        }
+        return null;
+    }
+
+    private static StampedDetectedObjects readFrame(JsonReader reader) throws IOException {
+        int time = 0;
+        List<DetectedObject> detectedObjects = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("time")) {
+                time = reader.nextInt();
+            } else if (name.equals("detectedObjects") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    detectedObjects.add(readDetectedObject(reader));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new StampedDetectedObjects(time, detectedObjects);
+    }
+
+    private static DetectedObject readDetectedObject(JsonReader reader) throws IOException {
+        String id = null;
+        String description = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("id")) {
+                // interned like the LiDAR ids, which it is looked up by
+                id = reader.nextString().intern();
+            } else if (name.equals("description")) {
+                description = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new DetectedObject(id, description);
+    }
+
+    /**
+     * Closes the file, the frames not read yet are not handed out anymore.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            depth = 0;
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                System.err.println(ex);
+            }
+        }
+    }
+}
@@ -4,6 +4,17 @@ import com.google.gson.*;
 import com.google.gson.annotations.SerializedName;
 import com.google.gson.reflect.TypeToken;
 
+import bgu.spl.mics.Event;
+import bgu.spl.mics.ExecutionMode;
+import bgu.spl.mics.MailboxSpec;
+import bgu.spl.mics.MailboxStats;
+import bgu.spl.mics.Message;
+import bgu.spl.mics.MessageBusImpl;
+import bgu.spl.mics.OverflowPolicy;
+import bgu.spl.mics.RoutingPolicy;
+import bgu.spl.mics.ServiceExecutor;
+import bgu.spl.mics.WaitStrategy;
+import bgu.spl.mics.application.messages.TrackedObjectsEvent;
 import bgu.spl.mics.application.objects.*;
 import bgu.spl.mics.application.services.CameraService;
 import bgu.spl.mics.application.services.FusionSlamService;
@@ -19,6 +30,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class GurionRockRunner {
 
@@ -48,40 +60,80 @@ public class GurionRockRunner {
             System.err.println(ex);
         }
 
-        try(FileReader reader = new FileReader(config.cameras.getPath()))
+        configureEventRouting(config.eventRouting);
+        configureMailboxes(config.mailboxes);
+        if (config.messageBatchSize != null) {
+            try {
+                MessageBusImpl.getInstance().setMaxBatch(config.messageBatchSize);
+            } catch (IllegalArgumentException ex) {
+                System.err.println("Ignoring MessageBatchSize: " + ex);
+            }
+        }
+
+        // With "stream_frames" every camera reads its own frames from the file as ticks advance
+        List<CameraDataReader> cameraFeeds = new ArrayList<>();
+        if (Boolean.TRUE.equals(config.cameras.streamFrames))
         {
-            Map<String, List<StampedDetectedObjects>> cameraData = parseCameraData(reader, gson);
-            for(Camera camera : config.cameras.cameras)
+            try
             {
-                for(StampedDetectedObjects stamp : cameraData.get(camera.getCameraKey()))
+                for(Camera camera : config.cameras.cameras)
                 {
-                    camera.addDetectedObject(stamp);
+                    CameraDataReader feed = CameraDataReader.open(config.cameras.getPath(), camera.getCameraKey());
+                    cameraFeeds.add(feed);
+                    camera.setFeed(feed);
                 }
             }
+            catch(Exception ex)
+            {
+                System.out.println(ex);
+            }
         }
-        catch(Exception ex)
+        else
         {
-            System.out.println(ex);
+            try(FileReader reader = new FileReader(config.cameras.getPath()))
+            {
+                Map<String, List<StampedDetectedObjects>> cameraData = CameraDataReader.readAll(reader);
+                for(Camera camera : config.cameras.cameras)
+                {
+                    for(StampedDetectedObjects stamp : cameraData.get(camera.getCameraKey()))
+                    {
+                        camera.addDetectedObject(stamp);
+                    }
+                }
+            }
+            catch(Exception ex)
+            {
+                System.out.println(ex);
+            }
         }
 
-        try (FileReader reader = new FileReader(config.lidars.getPath())) {
+        // A point cloud file made by LidarDataConverter is mapped instead of read. With
+        // "stream_points" the database reads the cloud points of a time when a LiDAR asks for them
+        LidarDataReader lidarFeed = null;
+        try {
             System.out.println("Lidar data file path: " + config.lidars.getPath());
-            List<LidarData> lidarData = parseLidarData(reader, gson);
-            
-            for (LidarData data : lidarData) {
-                List<CloudPoint3D> cloudPoints3D = new ArrayList<>();
-                for (double[] point : data.getCloudPoints()) {
-                    cloudPoints3D.add(new CloudPoint3D(point[0], point[1], point[2]));
+            Path lidarPath = Paths.get(config.lidars.getPath());
+            // a frame is asked for at the latest when a camera sends it, frequency ticks after its time
+            int retainedTicks = 1;
+            for (Camera camera : config.cameras.cameras) {
+                retainedTicks = Math.max(retainedTicks, camera.getFrequency() + 1);
+            }
+            if (PointCloudFile.isPointCloudFile(lidarPath)) {
+                liDarDataBase.setSource(PointCloudFile.open(lidarPath), retainedTicks);
+                liDarDataBase.freeze();
+            } else {
+                lidarFeed = LidarDataReader.open(config.lidars.getPath());
+                if (Boolean.TRUE.equals(config.lidars.streamPoints)) {
+                    liDarDataBase.setSource(lidarFeed, retainedTicks);
+                } else {
+                    while (lidarFeed.hasNext()) {
+                        liDarDataBase.addCloudPoints(lidarFeed.next());
+                    }
+                    // read without locking from now on
+                    liDarDataBase.freeze();
                 }
-                
-                // Convert to 2D
-                List<CloudPoint> cloudPoints2D = convert3DTo2D(cloudPoints3D);
-        
-                // Create StampedCloudPoints object and add to database
-                StampedCloudPoints stampedPoints = new StampedCloudPoints(data.getId(), data.getTime(), cloudPoints2D);
-                liDarDataBase.addCloudPoints(stampedPoints);
             }
-        } catch (IOException e) {
+        } catch (IOException | JsonIOException e) {
             e.printStackTrace();
         }
 
@@ -95,13 +147,30 @@ public class GurionRockRunner {
             System.err.println(ex);
         }
 
+        // The command line "--execution=VIRTUAL" and "--clock=VIRTUAL_TIME" override the
+        // ExecutionMode and the ClockMode of the configuration
+        ExecutionMode executionMode = config.executionMode != null ? config.executionMode : ExecutionMode.PLATFORM;
+        TimeService.ClockMode clockMode = config.clockMode != null ? config.clockMode : TimeService.ClockMode.REAL_TIME;
+        for (int i = 1; i < args.length; i++) {
+            try {
+                if (args[i].startsWith("--execution=")) {
+                    executionMode = ExecutionMode.valueOf(args[i].substring("--execution=".length()).trim().toUpperCase());
+                } else if (args[i].startsWith("--clock=")) {
+                    clockMode = TimeService.ClockMode.valueOf(args[i].substring("--clock=".length()).trim().toUpperCase());
+                }
+            } catch (IllegalArgumentException ex) {
+                System.err.println("Ignoring " + args[i] + ": " + ex);
+            }
+        }
+        ServiceExecutor executor = ServiceExecutor.create(executionMode);
+        System.out.println("Execution mode: " + executor.getMode());
+
         CountDownLatch startLatch = new CountDownLatch(1+config.cameras.cameras.size()+config.lidars.lidars.size());
 
         // Initialize and start FusionSlamService (waits on fusionInitLatch for initialization)
         CountDownLatch fusionInitLatch = new CountDownLatch(1);
         FusionSlamService fService = new FusionSlamService(FusionSlam.getInstance(), input_file_path.getParent().toString(), fusionInitLatch);
-        Thread fusionThread = new Thread(fService);
-        fusionThread.start();
+        executor.execute(fService);
 
         // Wait for FusionSlamService initialization
         try{
@@ -114,22 +183,21 @@ public class GurionRockRunner {
 
         
         // Initialize other services (cameras, lidar)
-        List<Thread> cameraThreads = new ArrayList<>();
+        List<CameraService> cameraServices = new ArrayList<>();
         for (Camera c : config.cameras.cameras) {
-            Thread cThread = new Thread(new CameraService(c, startLatch));
-            cameraThreads.add(cThread);
-            cThread.start();
+            CameraService cService = new CameraService(c, startLatch);
+            cameraServices.add(cService);
+            executor.execute(cService);
         }
 
-        List<Thread> lidarThreads = new ArrayList<>();
+        List<LiDarService> lidarServices = new ArrayList<>();
         for (LiDarWorkerTracker lidar : config.lidars.lidars) {
-            Thread l = new Thread(new LiDarService(lidar, startLatch));
-            lidarThreads.add(l);
-            l.start();
+            LiDarService l = new LiDarService(lidar, startLatch);
+            lidarServices.add(l);
+            executor.execute(l);
         }
         PoseService poseService = new PoseService(new GPSIMU(0, STATUS.UP, poses),startLatch);
-        Thread poseThread = new Thread(poseService);
-        poseThread.start();
+        executor.execute(poseService);
 
         try {
             startLatch.await();
@@ -138,28 +206,47 @@ public class GurionRockRunner {
         }
 
         // Initialize and start TimeService
-        TimeService timeService = new TimeService(config.TickTime * 1000, config.Duration);
-        Thread timeThread = new Thread(timeService);
-        timeThread.start();
+        TimeService.CatchUpPolicy catchUp = config.catchUp != null ? config.catchUp : TimeService.CatchUpPolicy.BURST;
+        TimeUnit tickTimeUnit = config.tickTimeUnit != null ? config.tickTimeUnit : TimeUnit.SECONDS;
+        TimeService timeService = new TimeService(config.TickTime, tickTimeUnit, config.Duration, clockMode, catchUp);
+        executor.execute(timeService);
 
-        // Wait for all threads to complete
+        // Wait for all services to complete
         try {
-            fusionThread.join();
-            for (Thread cThread : cameraThreads) {
-                cThread.join();
+            executor.join(fService);
+            for (CameraService cService : cameraServices) {
+                executor.join(cService);
             }
-            for (Thread l : lidarThreads) {
-                l.join();
+            for (LiDarService l : lidarServices) {
+                executor.join(l);
             }
-            timeThread.join();
+            executor.join(timeService);
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
+        for (CameraDataReader feed : cameraFeeds) {
+            feed.close();
+        }
+        if (lidarFeed != null) {
+            lidarFeed.close();
+        }
 
         // Print final results
         System.out.println("Initialized cameras: " + config.cameras.cameras.size());
         System.out.println("Initialized LiDAR workers: " + config.lidars.lidars.size());
         System.out.println("Loaded poses: " + poses.size());
+        StatisticalFolder statistics = StatisticalFolder.getInstance();
+        if (statistics.getTimedTicks() > 0) {
+            System.out.println("Tick lateness: mean " + statistics.getMeanTickLatenessNanos() / 1000 + " us, max "
+                + statistics.getMaxTickLatenessNanos() / 1000 + " us, " + statistics.getOverrunTicks() + " of "
+                + statistics.getTimedTicks() + " ticks overran");
+        }
+        for (Map.Entry<String, MailboxStats> entry : MessageBusImpl.getInstance().getMailboxStats().entrySet()) {
+            MailboxStats stats = entry.getValue();
+            if (stats.getDropped() + stats.getBlocked() + stats.getCoalesced() > 0) {
+                System.out.println("Mailbox of " + entry.getKey() + ": " + stats);
+            }
+        }
     }
 
     // Configuration classes for Cameras and LiDars
@@ -174,8 +261,29 @@ public class GurionRockRunner {
         private String pose_data_file_path;
         @SerializedName("TickTime")
         private int TickTime;
+        // Optional, the unit of TickTime: SECONDS (default), MILLISECONDS, MICROSECONDS or NANOSECONDS
+        @SerializedName("TickTimeUnit")
+        private TimeUnit tickTimeUnit;
         @SerializedName("Duration")
         private int Duration;
+        // Optional, maps an event class name to a RoutingPolicy, e.g. {"DetectObjectsEvent": "LEAST_LOADED"}
+        @SerializedName("EventRouting")
+        private Map<String, String> eventRouting;
+        // Optional, PLATFORM (default) or VIRTUAL threads for the services, or a shared POOL
+        @SerializedName("ExecutionMode")
+        private ExecutionMode executionMode;
+        // Optional, REAL_TIME (default) or VIRTUAL_TIME to send every tick as soon as the previous one was handled
+        @SerializedName("ClockMode")
+        private TimeService.ClockMode clockMode;
+        // Optional, BURST (default), SKIP or STRETCH, how real time ticks recover from an overrun
+        @SerializedName("CatchUpPolicy")
+        private TimeService.CatchUpPolicy catchUp;
+        // Optional, the maximal number of messages a service takes from its mailbox at once
+        @SerializedName("MessageBatchSize")
+        private Integer messageBatchSize;
+        // Optional, the mailboxes of the services, see MailboxesConfig
+        @SerializedName("Mailboxes")
+        private MailboxesConfig mailboxes;
 
         public Config(CameraConfig cameraConfig, LidarConfig lidarConfig, String path, int tickTime,int duration)
         {
@@ -193,6 +301,9 @@ public class GurionRockRunner {
         private List<Camera> cameras;
         @SerializedName("camera_datas_path")
         private String camera_data_file_path;
+        // Optional, true to read the frames of every camera as ticks advance instead of all at start
+        @SerializedName("stream_frames")
+        private Boolean streamFrames;
 
         public List<Camera> getCameraList()
         {
@@ -205,16 +316,56 @@ public class GurionRockRunner {
         }
     }
 
-    public static class CameraData {
-        private int time;
-        private List<DetectedObject> detectedObjects;
-
-        public int getTime() {
-            return time;
-        }
+    /**
+     * The mailboxes of the services, e.g.
+     * {"default": {"type": "RING", "capacity": 1024, "waitStrategy": "SPIN_THEN_PARK"},
+     *  "services": {"FusionSlamService": {"capacity": 8192, "overflow": "BLOCK"},
+     *               "LiDarService": {"overflowByMessage": {"TickBroadcast": "COALESCE"}}}}.
+     * Services are matched by name (e.g. "LiDarService-2") or by class (e.g. "LiDarService"),
+     * fields missing from a service entry are taken from the default entry.
+     * Message classes in "overflowByMessage" are resolved like the keys of "EventRouting".
+     */
+    public static class MailboxesConfig
+    {
+        @SerializedName("default")
+        private MailboxConfig defaults;
+        @SerializedName("services")
+        private Map<String, MailboxConfig> services;
+    }
 
-        public List<DetectedObject> getDetectedObjects() {
-            return detectedObjects;
+    public static class MailboxConfig
+    {
+        private static final int DEFAULT_RING_CAPACITY = 1024;
+
+        @SerializedName("type")
+        private MailboxSpec.Type type;
+        @SerializedName("capacity")
+        private Integer capacity;
+        @SerializedName("waitStrategy")
+        private WaitStrategy waitStrategy;
+        @SerializedName("overflow")
+        private OverflowPolicy overflow;
+        @SerializedName("overflowByMessage")
+        private Map<String, OverflowPolicy> overflowByMessage;
+
+        public MailboxSpec toSpec(MailboxSpec base) throws ClassNotFoundException
+        {
+            Map<Class<? extends Message>, OverflowPolicy> messagePolicies = base.getMessagePolicies();
+            if (overflowByMessage != null) {
+                messagePolicies = new HashMap<>();
+                for (Map.Entry<String, OverflowPolicy> entry : overflowByMessage.entrySet()) {
+                    messagePolicies.put(messageClass(entry.getKey(), Message.class), entry.getValue());
+                }
+            }
+            MailboxSpec.Type specType = type != null ? type : base.getType();
+            int specCapacity = capacity != null ? capacity : base.getCapacity();
+            if (specType == MailboxSpec.Type.RING && specCapacity == 0) {
+                specCapacity = DEFAULT_RING_CAPACITY;
+            }
+            return new MailboxSpec(specType, specCapacity,
+                waitStrategy != null ? waitStrategy : base.getWaitStrategy(),
+                overflow != null ? overflow : base.getOverflowPolicy(),
+                messagePolicies);
         }
     }
 
@@ -223,6 +374,10 @@ public class GurionRockRunner {
         private List<LiDarWorkerTracker> lidars;
         @SerializedName("lidars_data_path")
         private String lidar_data_file_path;
+        // Optional, true to read the cloud points of a time when they are asked for instead of all at
+        // start; the file must then be sorted by time
+        @SerializedName("stream_points")
+        private Boolean streamPoints;
 
         public LidarConfig(List<LiDarWorkerTracker> lidars, String path)
         {
@@ -241,75 +396,6 @@ public class GurionRockRunner {
         }
     }
 
-    // Wrapper class for 3D CloudPoints
-    public static class StampedCloudPoints3D {
-        private String id;
-        private int time;
-        private List<CloudPoint3D> cloudPoints;
-
-        public StampedCloudPoints3D(String id, int time, List<CloudPoint3D> cloudPoints) {
-            this.id = id;
-            this.time = time;
-            this.cloudPoints = cloudPoints;
-        }
-
-        public String getId() {
-            return id;
-        }
-
-        public int getTime() {
-            return time;
-        }
-
-        public List<CloudPoint3D> getCloudPoints() {
-            return cloudPoints;
-        }
-    }
-
-    // Class representing 3D CloudPoint
-    public static class CloudPoint3D {
-        private double x;
-        private double y;
-        private double z;
-
-        public CloudPoint3D(double x, double y, double z) {
-            this.x = x;
-            this.y = y;
-            this.z = z;
-        }
-
-        public double getX() {
-            return x;
-        }
-
-        public double getY() {
-            return y;
-        }
-
-        public double getZ() {
-            return z;
-        }
-    }
-
-    // LiDAR Data Class
-    public static class LidarData {
-        private int time;
-        private String id;
-        private List<double[]> cloudPoints;
-
-        public int getTime() {
-            return time;
-        }
-
-        public String getId() {
-            return id;
-        }
-
-        public List<double[]> getCloudPoints() {
-            return cloudPoints;
-        }
-    }
-
     public static class CameraDeserializer implements JsonDeserializer<Camera> {
 
         @Override
@@ -342,72 +428,61 @@ public class GurionRockRunner {
         }
     }
 
-    public static Map<String, List<StampedDetectedObjects>> parseCameraData(FileReader reader, Gson gson) {
-        Map<String, List<StampedDetectedObjects>> cameraDataMap = new HashMap<>();
-    
-        // Deserialize the JSON as a generic Map
-        JsonObject jsonObject = JsonParser.parseReader(reader).getAsJsonObject();
-    
-        // Loop through each camera key in the JSON
-        for (Map.Entry<String, JsonElement> entry : jsonObject.entrySet()) {
-            String cameraKey = entry.getKey();
-            JsonElement cameraDataElement = entry.getValue();
-    
-            // Initialize the list to store StampedDetectedObjects objects
-            List<StampedDetectedObjects> stampedDetectedObjectsList = new ArrayList<>();
-    
-            // Check if the value is a JsonArray (for list of CameraData)
-            if (cameraDataElement.isJsonArray()) {
-                JsonArray cameraDataArray = cameraDataElement.getAsJsonArray();
-    
-                // Check if the first item in the array is itself a JsonArray (list of lists)
-                if (cameraDataArray.size() > 0 && cameraDataArray.get(0).isJsonArray()) {
-                    // If it's a list of lists, we need to flatten it
-                    for (JsonElement subListElement : cameraDataArray) {
-                        JsonArray innerArray = subListElement.getAsJsonArray();
-                        for (JsonElement innerItem : innerArray) {
-                            // Deserialize each item to CameraData first
-                            CameraData cameraData = gson.fromJson(innerItem, CameraData.class);
-                            // Then map it to StampedDetectedObjects
-                            StampedDetectedObjects stampedDetectedObjects = convertToStampedDetectedObjects(cameraData);
-                            stampedDetectedObjectsList.add(stampedDetectedObjects);
-                        }
-                    }
-                } else {
-                    // If it's a plain list, process it directly
-                    for (JsonElement cameraDataItem : cameraDataArray) {
-                        CameraData cameraData = gson.fromJson(cameraDataItem, CameraData.class);
-                        // Convert CameraData to StampedDetectedObjects
-                        StampedDetectedObjects stampedDetectedObjects = convertToStampedDetectedObjects(cameraData);
-                        stampedDetectedObjectsList.add(stampedDetectedObjects);
-                    }
-                }
+    /**
+     * Applies the routing policies from the configuration file to the message bus.
+     * Event classes may be given by their simple name if they belong to the
+     * application messages package, or by their fully qualified name.
+     */
+    @SuppressWarnings("unchecked")
+    public static void configureEventRouting(Map<String, String> eventRouting) {
+        if (eventRouting == null) {
+            return;
+        }
+        for (Map.Entry<String, String> entry : eventRouting.entrySet()) {
+            try {
+                Class<?> type = messageClass(entry.getKey(), Event.class);
+                RoutingPolicy policy = RoutingPolicy.fromName(entry.getValue());
+                MessageBusImpl.getInstance().setEventRouter((Class<? extends Event<?>>) type, policy.newRouter());
+                System.out.println("Routing " + type.getSimpleName() + " with " + policy);
+            } catch (ClassNotFoundException | IllegalArgumentException ex) {
+                System.err.println("Ignoring routing for " + entry.getKey() + ": " + ex);
             }
-    
-            // Add the processed camera data to the map
-            cameraDataMap.put(cameraKey, stampedDetectedObjectsList);
         }
-    
-        return cameraDataMap;
-    }
-    
-    // Helper method to convert CameraData to StampedDetectedObjects
-    private static StampedDetectedObjects convertToStampedDetectedObjects(CameraData cameraData) {
-        List<DetectedObject> detectedObjects = cameraData.getDetectedObjects();
-        return new StampedDetectedObjects(cameraData.getTime(), detectedObjects);
     }
 
-    public static List<LidarData> parseLidarData(FileReader reader, Gson gson) {
-        Type lidarDataListType = new TypeToken<List<LidarData>>() {}.getType();
-        return gson.fromJson(reader, lidarDataListType);
+    /**
+     * Resolves a message class named in the configuration file, by its simple name if
+     * it belongs to the application messages package or else by its fully qualified name.
+     */
+    private static <M extends Message> Class<? extends M> messageClass(String name, Class<M> kind) throws ClassNotFoundException {
+        String className = name.contains(".") ? name : TrackedObjectsEvent.class.getPackage().getName() + "." + name;
+        Class<?> type = Class.forName(className);
+        if (!kind.isAssignableFrom(type)) {
+            throw new IllegalArgumentException(className + " is not a " + kind.getSimpleName());
+        }
+        return type.asSubclass(kind);
     }
 
-    public static List<CloudPoint> convert3DTo2D(List<CloudPoint3D> cloudPoints3D) {
-        List<CloudPoint> cloudPoints2D = new ArrayList<>();
-        for (CloudPoint3D point : cloudPoints3D) {
-            cloudPoints2D.add(new CloudPoint(point.getX(), point.getY()));
+    /**
+     * Applies the mailbox configuration to the message bus, before any service registers.
+     */
+    public static void configureMailboxes(MailboxesConfig mailboxes) {
+        if (mailboxes == null) {
+            return;
+        }
+        try {
+            MailboxSpec defaultSpec = mailboxes.defaults != null ? mailboxes.defaults.toSpec(MailboxSpec.DEFAULT) : MailboxSpec.DEFAULT;
+            Map<String, MailboxSpec> perService = new HashMap<>();
+            if (mailboxes.services != null) {
+                for (Map.Entry<String, MailboxConfig> entry : mailboxes.services.entrySet()) {
+                    perService.put(entry.getKey(), entry.getValue().toSpec(defaultSpec));
+                }
+            }
+            MessageBusImpl.getInstance().configureMailboxes(defaultSpec, perService);
+            System.out.println("Mailboxes: " + defaultSpec + " " + perService);
+        } catch (ClassNotFoundException | IllegalArgumentException ex) {
+            System.err.println("Ignoring mailbox configuration: " + ex);
         }
-        return cloudPoints2D;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,29 @@
+package bgu.spl.mics.application;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import bgu.spl.mics.application.objects.PointCloudFile;
+
+/**
+ * Converts a LiDAR data JSON file to a {@link PointCloudFile}, which can then be given
+ * as the "lidars_data_path" of a configuration instead of the JSON file.
+ * <p>
+ * Usage: {@code LidarDataConverter <lidar_data.json> <output file>}
+ */
+public class LidarDataConverter {
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: LidarDataConverter <lidar_data.json> <output file>");
+            System.exit(2);
+        }
+        try (LidarDataReader records = LidarDataReader.open(args[0])) {
+            PointCloudFile.write(records, Paths.get(args[1]));
+            System.out.println("Converted " + PointCloudFile.open(Paths.get(args[1])).getRecordCount() + " records to " + args[1]);
+        } catch (IOException | RuntimeException ex) {
+            System.err.println(ex);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package bgu.spl.mics.application;
+
+import java.io.Closeable;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import bgu.spl.mics.application.objects.PointCloud;
+import bgu.spl.mics.application.objects.StampedCloudPoints;
+
+/**
+ * Reads the LiDAR data file one record at a time with a streaming {@link JsonReader}.
+ * <p>
+ * The file is a list of records, e.g. [{"time": 2, "id": "Wall_1", "cloudPoints":
+ * [[0.1176, 3.6969, 0.104]]}]. Every record is built directly as a {@link StampedCloudPoints}
+ * whose {@link PointCloud} keeps only x and y, so no intermediate lists of coordinates are built.
+ */
+public class LidarDataReader implements Iterator<StampedCloudPoints>, Closeable {
+    private final JsonReader reader;
+    private StampedCloudPoints next = null;
+    private boolean closed = false;
+
+    private LidarDataReader(JsonReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Opens {@code path} before its first record.
+     * @throws IOException if the file cannot be read or is not a list.
+     */
+    public static LidarDataReader open(String path) throws IOException {
+        LidarDataReader records = new LidarDataReader(new JsonReader(new FileReader(path)));
+        try {
+            records.reader.beginArray();
+        } catch (IOException | RuntimeException ex) {
+            records.close();
+            throw ex;
+        }
+        return records;
+    }
+
+    /**
+     * @throws JsonIOException if the file cannot be read or is malformed.
+     */
+    @Override
+    public boolean hasNext() {
+        if (next == null && !closed) {
+            try {
+                if (reader.hasNext()) {
+                    next = readRecord();
+                }
+            } catch (IOException ex) {
+                close();
+                throw new JsonIOException(ex);
+            }
+            if (next == null) {
+                close();
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public StampedCloudPoints next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        StampedCloudPoints record = next;
+        next = null;
+        return record;
+    }
+
+    private StampedCloudPoints readRecord() throws IOException {
+        int time = 0;
+        String id = null;
+        PointCloud.Builder coordinates = new PointCloud.Builder();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("time")) {
+                time = reader.nextInt();
+            } else if (name.equals("id")) {
+                // interned, so looking it up by a detected object id compares references
+                id = reader.nextString().intern();
+            } else if (name.equals("cloudPoints") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    // the z coordinate is not used
+                    reader.beginArray();
+                    double x = reader.nextDouble();
+                    double y = reader.nextDouble();
+                    while (reader.hasNext()) {
+                        reader.skipValue();
+                    }
+                    reader.endArray();
+                    coordinates.add(x, y);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new StampedCloudPoints(id, time, coordinates.build());
+    }
+
+    /**
+     * Closes the file, the records not read yet are not handed out anymore.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                System.err.println(ex);
+            }
+        }
+    }
+}
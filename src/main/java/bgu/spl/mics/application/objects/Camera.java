@@ -5,10 +5,21 @@ import java.util.List;
 import com.google.gson.annotations.SerializedName;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 
 /**
  * Represents a camera sensor on the robot.
  * Responsible for detecting objects in the environment.
+ * <p>
+ * The frames are kept sorted by time, and a cursor marks the first frame that was not
+ * handed out by {@link #takeDue(int)} yet. Since ticks only move forward, finding the
+ * frames of a tick costs nothing more than handing them out.
+ * <p>
+ * A camera may also be fed its frames as ticks advance, see {@link #setFeed(Iterator)}.
+ * It then reads from the feed only up to the first frame that is not due yet, and forgets
+ * the frames it handed out, so it holds a window of frames instead of the whole recording.
  */
 public class Camera {
     @SerializedName("id")
@@ -19,6 +30,12 @@ public class Camera {
     private List<StampedDetectedObjects> detectedObjectsList = new ArrayList<>();
     @SerializedName("camera_key")
     private String cameraKey; // New field for camera_key
+    // the frames before it are due before the last tick passed to takeDue
+    private int nextFrame = 0;
+    private boolean sorted = true;
+    private Iterator<StampedDetectedObjects> feed = null;
+    // the time of the last frame read from the feed
+    private int lastFedTime = Integer.MIN_VALUE;
     
     public Camera(int id, int frequency, String cameraKey) {
         this.id = id;
@@ -32,12 +49,78 @@ public class Camera {
         this.status = status;
         this.detectedObjectsList = detectedObjects;
         this.cameraKey = cameraKey;
+        for (int i = 1; i < detectedObjects.size() && sorted; i++) {
+            sorted = detectedObjects.get(i - 1).getTime() <= detectedObjects.get(i).getTime();
+        }
     }
 
     public synchronized void addDetectedObject(StampedDetectedObjects object) {
+        int size = this.detectedObjectsList.size();
+        if (size > 0 && this.detectedObjectsList.get(size - 1).getTime() > object.getTime()) {
+            this.sorted = false;
+        }
         this.detectedObjectsList.add(object);
     }
 
+    /**
+     * Feeds the camera its frames from {@code feed} as ticks advance, after the frames
+     * that were added to it. The feed is expected to be sorted by time; frames it returns
+     * after their due tick passed are never handed out.
+     */
+    public synchronized void setFeed(Iterator<StampedDetectedObjects> feed) {
+        this.feed = feed;
+    }
+
+    /**
+     * @return true if some frames were not handed out yet, including frames of the feed
+     *         that were not read yet.
+     */
+    public synchronized boolean hasRemaining() {
+        return this.nextFrame < this.detectedObjectsList.size() || (this.feed != null && this.feed.hasNext());
+    }
+
+    /**
+     * Hands out the frames that are due at {@code tick}, the frames that were detected
+     * {@link #getFrequency()} ticks earlier, in the order they were added. Frames that
+     * were due at an earlier tick are passed over, so ticks must not go backwards.
+     *
+     * @param tick The current tick.
+     * @return The frames due at {@code tick}, empty if there are none.
+     */
+    public synchronized List<StampedDetectedObjects> takeDue(int tick) {
+        int dueTime = tick - this.frequency;
+        if (this.feed != null) {
+            while (this.lastFedTime <= dueTime && this.feed.hasNext()) {
+                StampedDetectedObjects frame = this.feed.next();
+                addDetectedObject(frame);
+                this.lastFedTime = frame.getTime();
+            }
+        }
+        if (!this.sorted) {
+            // stable, frames of the same time keep their order; only the frames not handed out yet move
+            this.detectedObjectsList.subList(this.nextFrame, this.detectedObjectsList.size())
+                .sort(Comparator.comparingInt(StampedDetectedObjects::getTime));
+            this.sorted = true;
+        }
+        int size = this.detectedObjectsList.size();
+        while (this.nextFrame < size && this.detectedObjectsList.get(this.nextFrame).getTime() < dueTime) {
+            this.nextFrame++;
+        }
+        int first = this.nextFrame;
+        while (this.nextFrame < size && this.detectedObjectsList.get(this.nextFrame).getTime() == dueTime) {
+            this.nextFrame++;
+        }
+        List<StampedDetectedObjects> due = first == this.nextFrame
+            ? Collections.<StampedDetectedObjects>emptyList()
+            : new ArrayList<>(this.detectedObjectsList.subList(first, this.nextFrame));
+        if (this.feed != null && this.nextFrame > 0) {
+            // the handed out frames are not needed anymore
+            this.detectedObjectsList.subList(0, this.nextFrame).clear();
+            this.nextFrame = 0;
+        }
+        return due;
+    }
+
     public int getId() {
         return this.id;
     }
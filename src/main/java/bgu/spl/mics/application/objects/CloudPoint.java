@@ -34,4 +34,23 @@ public class CloudPoint
     {
         this.y = y;
     }
+
+    @Override
+    public boolean equals(Object other)
+    {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof CloudPoint)) {
+            return false;
+        }
+        CloudPoint point = (CloudPoint) other;
+        return Double.compare(this.x, point.x) == 0 && Double.compare(this.y, point.y) == 0;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * Double.hashCode(this.x) + Double.hashCode(this.y);
+    }
 }
@@ -0,0 +1,89 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The cloud points the LiDAR recorded at a single time, indexed by object id, with a flag
+ * for an "ERROR" record precomputed, so tracking a frame looks up every detected object
+ * once instead of scanning all the records of its time.
+ * <p>
+ * It never changes once built; adding a record builds a new one, so it is handed out
+ * without copying.
+ */
+public final class CloudPointsAtTime {
+    public static final CloudPointsAtTime EMPTY = new CloudPointsAtTime(Collections.<StampedCloudPoints>emptyList(), Collections.<String, List<StampedCloudPoints>>emptyMap(), false);
+
+    private static final String ERROR_ID = "ERROR";
+
+    private final List<StampedCloudPoints> records;
+    private final Map<String, List<StampedCloudPoints>> byId;
+    private final boolean error;
+
+    // the lists are not copied, they must not change afterwards
+    CloudPointsAtTime(List<StampedCloudPoints> records, Map<String, List<StampedCloudPoints>> byId, boolean error) {
+        this.records = records;
+        this.byId = byId;
+        this.error = error;
+    }
+
+    /**
+     * @return the index of {@code records}, which are all of the same time.
+     */
+    public static CloudPointsAtTime of(List<StampedCloudPoints> records) {
+        Map<String, List<StampedCloudPoints>> byId = new HashMap<>();
+        boolean error = false;
+        for (StampedCloudPoints record : records) {
+            byId.computeIfAbsent(record.getId(), id -> new ArrayList<>(1)).add(record);
+            error = error || ERROR_ID.equals(record.getId());
+        }
+        byId.replaceAll((id, sameId) -> Collections.unmodifiableList(sameId));
+        return new CloudPointsAtTime(Collections.unmodifiableList(new ArrayList<>(records)), byId, error);
+    }
+
+    /**
+     * @return a copy of this index with {@code record} added after its records. It copies
+     * the whole index, so the records of a time are indexed at once with {@link #of(List)}.
+     */
+    public CloudPointsAtTime with(StampedCloudPoints record) {
+        List<StampedCloudPoints> newRecords = new ArrayList<>(records.size() + 1);
+        newRecords.addAll(records);
+        newRecords.add(record);
+        Map<String, List<StampedCloudPoints>> newById = new HashMap<>(byId);
+        List<StampedCloudPoints> sameId = byId.get(record.getId());
+        if (sameId == null) {
+            newById.put(record.getId(), Collections.singletonList(record));
+        } else {
+            // an id recorded more than once at a time is tracked once per record
+            List<StampedCloudPoints> newSameId = new ArrayList<>(sameId);
+            newSameId.add(record);
+            newById.put(record.getId(), Collections.unmodifiableList(newSameId));
+        }
+        return new CloudPointsAtTime(Collections.unmodifiableList(newRecords), newById, error || ERROR_ID.equals(record.getId()));
+    }
+
+    /**
+     * @return true if the LiDAR recorded an error at this time.
+     */
+    public boolean hasError() {
+        return error;
+    }
+
+    /**
+     * @return the records of object {@code id}, in the order they were recorded, empty if there are none.
+     */
+    public List<StampedCloudPoints> get(String id) {
+        List<StampedCloudPoints> sameId = byId.get(id);
+        return sameId == null ? Collections.<StampedCloudPoints>emptyList() : sameId;
+    }
+
+    /**
+     * @return all the records, in the order they were recorded.
+     */
+    public List<StampedCloudPoints> getAll() {
+        return records;
+    }
+}
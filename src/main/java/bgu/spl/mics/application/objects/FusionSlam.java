@@ -2,25 +2,48 @@ package bgu.spl.mics.application.objects;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BinaryOperator;
 
 /**
  * Manages the fusion of sensor data for simultaneous localization and mapping (SLAM).
  * Combines data from multiple sensors (e.g., LiDAR, camera) to build and update a global map.
  * Implements the Singleton pattern to ensure a single instance of FusionSlam exists.
+ * <p>
+ * The landmarks are also kept in a uniform grid by the centroid of their coordinates, so
+ * the landmarks near a position are found by looking at a few cells instead of all of them,
+ * see {@link #getLandmarksWithin(double, double, double)}. The grid follows the landmarks
+ * as long as their coordinates are updated through {@link #updateLandmark(LandMark, PointCloud)}.
+ * <p>
+ * A concurrent map finds a landmark by id without locking or copying the landmarks; the
+ * list keeps the order the landmarks were added in, which is the order of the output.
  */
 public class FusionSlam 
 {
 
     // Fields
     private final List<LandMark> landmarks; // Represents the map of the environment
+    private final Map<String, LandMark> landmarksById;
     private final List<Pose> poses; // Represents previous poses needed for calculations
     private Pose currentPose;
 
+    // The side of a grid cell, in the units of the coordinates
+    private static final double GRID_CELL_SIZE = 1.0;
+    private final Map<Long, List<IndexedLandmark>> grid;
+    private final Map<LandMark, IndexedLandmark> indexed;
+
     // Private constructor to enforce Singleton pattern
     private FusionSlam() {
         this.landmarks = new ArrayList<>();
+        this.landmarksById = new ConcurrentHashMap<>();
         this.poses = new ArrayList<>();
         this.currentPose = null;
+        this.grid = new HashMap<>();
+        this.indexed = new IdentityHashMap<>();
     }
 
     /**
@@ -49,6 +72,160 @@ public class FusionSlam
      */
     public synchronized void addLandmark(LandMark landmark) {
         landmarks.add(landmark);
+        landmarksById.putIfAbsent(landmark.getId(), landmark);
+        index(landmark, landmark.getPoints());
+    }
+
+    /**
+     * Finds a landmark by id, without locking.
+     *
+     * @return the first landmark added with {@code id}, or null if there is none.
+     */
+    public LandMark getLandmark(String id) {
+        return landmarksById.get(id);
+    }
+
+    /**
+     * Merges an observation into the landmark of its id, or adds a new landmark with the
+     * observed coordinates if there is none, as a single step.
+     *
+     * @param id          the id of the landmark.
+     * @param description the description of a new landmark.
+     * @param observed    the observed coordinates.
+     * @param merge       computes the new coordinates of an existing landmark from its
+     *                    coordinates and the observed ones.
+     * @return true if a new landmark was added.
+     */
+    public synchronized boolean mergeOrInsert(String id, String description, PointCloud observed, BinaryOperator<PointCloud> merge) {
+        LandMark existing = landmarksById.get(id);
+        if (existing == null) {
+            addLandmark(new LandMark(id, description, observed));
+            return true;
+        }
+        updateLandmark(existing, merge.apply(existing.getPoints(), observed));
+        return false;
+    }
+
+    /**
+     * Replaces the coordinates of a landmark of the map, and moves it in the grid if its
+     * centroid moved to another cell.
+     *
+     * @param landmark    the Landmark to update.
+     * @param coordinates its new coordinates.
+     */
+    public synchronized void updateLandmark(LandMark landmark, PointCloud coordinates) {
+        landmark.setPoints(coordinates);
+        if (indexed.containsKey(landmark)) {
+            unindex(landmark);
+            index(landmark, coordinates);
+        }
+    }
+
+    /**
+     * Finds the landmarks whose centroid is within {@code radius} of a position.
+     * Landmarks without coordinates have no centroid and are never found.
+     *
+     * @return the landmarks found, the nearest first.
+     */
+    public synchronized List<LandMark> getLandmarksWithin(double x, double y, double radius) {
+        List<IndexedLandmark> found = new ArrayList<>();
+        long minX = cell(x - radius);
+        long maxX = cell(x + radius);
+        long minY = cell(y - radius);
+        long maxY = cell(y + radius);
+        double radiusSquared = radius * radius;
+        if ((double) (maxX - minX + 1) * (maxY - minY + 1) > grid.size()) {
+            // the radius covers more cells than there are landmarks in, so look at those instead
+            for (List<IndexedLandmark> inCell : grid.values()) {
+                addWithin(inCell, x, y, radiusSquared, found);
+            }
+        } else {
+            for (long cellX = minX; cellX <= maxX; cellX++) {
+                for (long cellY = minY; cellY <= maxY; cellY++) {
+                    List<IndexedLandmark> inCell = grid.get(key(cellX, cellY));
+                    if (inCell != null) {
+                        addWithin(inCell, x, y, radiusSquared, found);
+                    }
+                }
+            }
+        }
+        found.sort(Comparator.comparingDouble(candidate -> candidate.distanceSquared(x, y)));
+        List<LandMark> nearest = new ArrayList<>(found.size());
+        for (IndexedLandmark candidate : found) {
+            nearest.add(candidate.landmark);
+        }
+        return nearest;
+    }
+
+    private static void addWithin(List<IndexedLandmark> candidates, double x, double y, double radiusSquared, List<IndexedLandmark> found) {
+        for (IndexedLandmark candidate : candidates) {
+            if (candidate.distanceSquared(x, y) <= radiusSquared) {
+                found.add(candidate);
+            }
+        }
+    }
+
+    private void index(LandMark landmark, PointCloud coordinates) {
+        if (coordinates.size() == 0) {
+            // kept without a cell, so it is moved in once it has coordinates
+            indexed.put(landmark, new IndexedLandmark(landmark, Double.NaN, Double.NaN, 0));
+            return;
+        }
+        double sumX = 0;
+        double sumY = 0;
+        for (int i = 0; i < coordinates.size(); i++) {
+            sumX += coordinates.getX(i);
+            sumY += coordinates.getY(i);
+        }
+        double centroidX = sumX / coordinates.size();
+        double centroidY = sumY / coordinates.size();
+        long key = key(cell(centroidX), cell(centroidY));
+        IndexedLandmark entry = new IndexedLandmark(landmark, centroidX, centroidY, key);
+        indexed.put(landmark, entry);
+        grid.computeIfAbsent(key, k -> new ArrayList<>()).add(entry);
+    }
+
+    private void unindex(LandMark landmark) {
+        IndexedLandmark entry = indexed.remove(landmark);
+        if (entry == null || Double.isNaN(entry.x)) {
+            return;
+        }
+        List<IndexedLandmark> inCell = grid.get(entry.cell);
+        inCell.remove(entry);
+        if (inCell.isEmpty()) {
+            grid.remove(entry.cell);
+        }
+    }
+
+    private static long cell(double coordinate) {
+        return (long) Math.floor(coordinate / GRID_CELL_SIZE);
+    }
+
+    private static long key(long cellX, long cellY) {
+        return (cellX << 32) ^ (cellY & 0xffffffffL);
+    }
+
+    /**
+     * A landmark in the grid, with the centroid it was put in its cell by.
+     */
+    private static final class IndexedLandmark {
+        private final LandMark landmark;
+        private final double x;
+        private final double y;
+        private final long cell;
+
+        IndexedLandmark(LandMark landmark, double x, double y, long cell) {
+            this.landmark = landmark;
+            this.x = x;
+            this.y = y;
+            this.cell = cell;
+        }
+
+        double distanceSquared(double otherX, double otherY) {
+            double dx = x - otherX;
+            double dy = y - otherY;
+            return dx * dx + dy * dy;
+        }
     }
 
     /**
@@ -107,4 +284,12 @@ public class FusionSlam
         this.poses.clear();
         this.currentPose = null;
     }
+
+    public synchronized void cleanLandmarks()
+    {
+        this.landmarks.clear();
+        this.landmarksById.clear();
+        this.grid.clear();
+        this.indexed.clear();
+    }
 }
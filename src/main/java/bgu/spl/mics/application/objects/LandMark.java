@@ -1,19 +1,26 @@
 package bgu.spl.mics.application.objects;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Represents a landmark in the environment map.
  * Landmarks are identified and updated by the FusionSlam service.
+ * The coordinates are a {@link PointCloud}, replaced as a whole when they are updated.
+ * Only {@link FusionSlam} changes them, so that it can keep the landmark in the grid cell
+ * of its centroid.
  */
 public class LandMark 
 {
     private String id;
     private String description;
-    private List<CloudPoint> coordinates;
+    private PointCloud coordinates;
 
     public LandMark(String id, String description, List<CloudPoint> coordinates)
+    {
+        this(id, description, PointCloud.of(coordinates));
+    }
+
+    public LandMark(String id, String description, PointCloud coordinates)
     {
         this.id = id;
         this.description = description;
@@ -24,7 +31,7 @@ public class LandMark
     {
         this.id = id;
         this.description = description;
-        coordinates = new ArrayList<CloudPoint>();
+        coordinates = PointCloud.EMPTY;
     }
 
     public String getId()
@@ -37,18 +44,31 @@ public class LandMark
         return this.description;
     }
 
-    public synchronized void addCoordinate(CloudPoint cPoint)
+    synchronized void addCoordinate(CloudPoint cPoint)
+    {
+        this.coordinates = this.coordinates.with(cPoint.getX(), cPoint.getY());
+    }
+
+    /**
+     * @return A read only view of the coordinates.
+     */
+    public synchronized List<CloudPoint> getCoordinateList()
+    {
+        return this.coordinates.asList();
+    }
+
+    public synchronized PointCloud getPoints()
     {
-        this.coordinates.add(cPoint);
+        return this.coordinates;
     }
 
-    public List<CloudPoint> getCoordinateList()
+    synchronized void setCoordinates(List<CloudPoint> list)
     {
-        return List.copyOf(this.coordinates);
+        this.coordinates = PointCloud.of(list);
     }
 
-    public void setCoordinates(List<CloudPoint> list)
+    synchronized void setPoints(PointCloud points)
     {
-        this.coordinates = list;
+        this.coordinates = points;
     }
 }
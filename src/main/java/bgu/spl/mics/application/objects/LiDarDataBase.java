@@ -1,68 +1,324 @@
 package bgu.spl.mics.application.objects;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * LiDarDataBase is a singleton class responsible for managing LiDAR data.
  * It provides access to cloud point data and other relevant information for tracked objects.
+ * <p>
+ * The cloud points are either all added before the simulation starts, or read from a
+ * source as they are asked for, see {@link #setSource(Iterator, int)}. With a source, the
+ * database reads it only up to the first record after the time asked for, and forgets the
+ * times that the ticks passed, so it holds a window of the recording instead of all of it.
+ * A {@link PointCloudFile} source is decoded a time at a time, the first time it is asked
+ * for, and the decoded times are forgotten like the ones read from a source.
+ * <p>
+ * The records added are collected per time, and the index of a time is built from all of
+ * them at once, when the time is first read after its records were added. Reads do not lock:
+ * the index of every time never changes once built, and it is kept in a concurrent map. Once
+ * all the cloud points were added, {@link #freeze()} publishes them as a plain immutable map.
+ * When a time has both added records and records in a file, the index of all of them is
+ * kept too, until either part changes. Only building an index, reading from a source and
+ * forgetting lock, and every LiDAR asks to forget on every tick, so the times are forgotten
+ * by the first one and the others return without locking.
  */
 public class LiDarDataBase {
 
     // Fields
-    private final Map<Integer,List<StampedCloudPoints>> cloudPoints; // The coordinates we have for every object per time
-    private static LiDarDataBase instance = null; // Singleton instance
+    private final Map<Integer,CloudPointsAtTime> cloudPoints; // The coordinates we have for every object per time
+    // the records added per time, the lists are only used while holding the lock
+    private final Map<Integer,List<StampedCloudPoints>> added;
+    // set once frozen, then read instead of cloudPoints
+    private volatile Map<Integer,CloudPointsAtTime> frozen = null;
+    private volatile Iterator<StampedCloudPoints> source = null;
+    private volatile PointCloudFile file = null;
+    // the times decoded from the file
+    private final Map<Integer,CloudPointsAtTime> mapped = new ConcurrentHashMap<>();
+    // the times that have both added and decoded records
+    private final Map<Integer,Merged> merged = new ConcurrentHashMap<>();
+    // the last tick advanceTo forgot the times before
+    private volatile int advancedTo = Integer.MIN_VALUE;
+    private int retainedTicks = 0;
+    // the time of the last record read from the source, MAX_VALUE once it is over
+    private volatile int lastReadTime = Integer.MIN_VALUE;
+    // the times before it were forgotten
+    private int firstRetainedTime = Integer.MIN_VALUE;
+    // why the source cannot be read any further, null while it can
+    private String sourceError = null;
+
+    private static class LiDarDataBaseHolder {
+        private static final LiDarDataBase INSTANCE = new LiDarDataBase();
+    }
 
     /**
      * Private constructor to enforce the Singleton pattern.
      */
     private LiDarDataBase() {
-        this.cloudPoints = new HashMap<>();
+        this.cloudPoints = new ConcurrentHashMap<>();
+        this.added = new ConcurrentHashMap<>();
     }
 
     /**
      * Returns the singleton instance of LiDarDataBase.
      *
-     * @param filePath The path to the LiDAR data file.
-     *                 This parameter is optional after the first call.
      * @return The singleton instance of LiDarDataBase.
      */
-    public static synchronized LiDarDataBase getInstance() {
-        if (instance == null) {
-            instance = new LiDarDataBase();
-        }
-        return instance;
+    public static LiDarDataBase getInstance() {
+        return LiDarDataBaseHolder.INSTANCE;
     }
 
     /**
      * Adds new cloud points data.
      *
      * @param stampedCloudPoints The StampedCloudPoints to add.
+     * @throws IllegalStateException if the database is frozen.
      */
     public synchronized void addCloudPoints(StampedCloudPoints stampedCloudPoints) 
     {
-        cloudPoints.putIfAbsent(stampedCloudPoints.getTime(), new ArrayList<>());
-        // Add the stampedCloudPoints to the list
-        cloudPoints.get(stampedCloudPoints.getTime()).add(stampedCloudPoints);
+        if (frozen != null) {
+            throw new IllegalStateException("The LiDAR database is frozen");
+        }
+        added.computeIfAbsent(stampedCloudPoints.getTime(), time -> new ArrayList<>()).add(stampedCloudPoints);
+        // built again from all the records of the time when it is read
+        cloudPoints.remove(stampedCloudPoints.getTime());
+    }
+
+    /**
+     * Publishes the cloud points added so far as an immutable map, which every read uses
+     * from now on. Nothing can be added afterwards, except through a source.
+     */
+    public synchronized void freeze()
+    {
+        if (frozen == null) {
+            Map<Integer,CloudPointsAtTime> snapshot = new HashMap<>();
+            for (Map.Entry<Integer,List<StampedCloudPoints>> records : added.entrySet()) {
+                snapshot.put(records.getKey(), CloudPointsAtTime.of(records.getValue()));
+            }
+            frozen = Collections.unmodifiableMap(snapshot);
+            // only the snapshot is read from now on
+            added.clear();
+            cloudPoints.clear();
+        }
+    }
+
+    public boolean isFrozen()
+    {
+        return frozen != null;
+    }
+
+    /**
+     * Reads the cloud points from {@code source} as they are asked for, after the ones that
+     * were added. The source must be sorted by time: the times before the last record read
+     * are taken to be complete, and are forgotten as the clock advances. A record older than
+     * the one before it fails the read with an {@link IllegalStateException}, the records
+     * have to be added up front instead.
+     *
+     * @param source        The records to read.
+     * @param retainedTicks The number of ticks the cloud points of a time are kept after
+     *                      the tick of that time, see {@link #advanceTo(int)}.
+     * @throws IllegalStateException if the database is frozen.
+     */
+    public synchronized void setSource(Iterator<StampedCloudPoints> source, int retainedTicks)
+    {
+        if (frozen != null) {
+            throw new IllegalStateException("The LiDAR database is frozen");
+        }
+        this.retainedTicks = retainedTicks;
+        this.lastReadTime = Integer.MIN_VALUE;
+        this.sourceError = null;
+        this.advancedTo = Integer.MIN_VALUE;
+        this.source = source;
+    }
+
+    /**
+     * Reads the cloud points from {@code file} when they are asked for, after the ones
+     * that were added.
+     *
+     * @param file          The file to read.
+     * @param retainedTicks The number of ticks the decoded cloud points of a time are kept
+     *                      after the tick of that time, see {@link #advanceTo(int)}.
+     */
+    public synchronized void setSource(PointCloudFile file, int retainedTicks)
+    {
+        this.retainedTicks = retainedTicks;
+        this.mapped.clear();
+        this.merged.clear();
+        this.advancedTo = Integer.MIN_VALUE;
+        this.file = file;
     }
 
     /**
-     * Retrieves the list of all cloud points.
+     * Forgets the cloud points of the times before {@code tick} minus the retained ticks,
+     * once nobody asks for them anymore. Does nothing without a source, or if a tick at
+     * least as late was already passed.
      *
-     * @return A copy of the cloud points list.
+     * @param tick The current tick.
      */
-    public synchronized List<StampedCloudPoints> getCloudPoints(int time) 
+    public void advanceTo(int tick)
     {
-        List<StampedCloudPoints> points = cloudPoints.get(time);
-        return List.copyOf(points);
+        if ((source == null && file == null) || tick <= advancedTo) {
+            return;
+        }
+        synchronized (this) {
+            if (tick <= advancedTo) {
+                return;
+            }
+            advancedTo = tick;
+            int bound = tick - retainedTicks;
+            // a time asked for again is decoded again
+            mapped.keySet().removeIf(time -> time < bound);
+            merged.keySet().removeIf(time -> time < bound);
+            if (source == null) {
+                return;
+            }
+            if (firstRetainedTime == Integer.MIN_VALUE) {
+                firstRetainedTime = bound;
+                added.keySet().removeIf(time -> time < bound);
+                cloudPoints.keySet().removeIf(time -> time < bound);
+            }
+            for (; firstRetainedTime < bound; firstRetainedTime++) {
+                added.remove(firstRetainedTime);
+                cloudPoints.remove(firstRetainedTime);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the cloud points of a time.
+     *
+     * @return The cloud points of {@code time}, empty if there are none.
+     */
+    public List<StampedCloudPoints> getCloudPoints(int time) 
+    {
+        return getCloudPointsAt(time).getAll();
+    }
+
+    /**
+     * Retrieves the cloud points of a time indexed by object id. The index never changes,
+     * so it is not copied.
+     *
+     * @return The cloud points of {@code time}, empty if there are none.
+     */
+    public CloudPointsAtTime getCloudPointsAt(int time)
+    {
+        Map<Integer,CloudPointsAtTime> snapshot = frozen;
+        CloudPointsAtTime points;
+        if (snapshot != null) {
+            points = snapshot.getOrDefault(time, CloudPointsAtTime.EMPTY);
+        } else {
+            if (source != null && lastReadTime <= time) {
+                readUpTo(time);
+            }
+            points = cloudPoints.get(time);
+            if (points == null) {
+                points = added.containsKey(time) ? buildIndex(time) : CloudPointsAtTime.EMPTY;
+            }
+        }
+        PointCloudFile mappedFile = file;
+        if (mappedFile != null) {
+            CloudPointsAtTime decoded = mapped.computeIfAbsent(time, mappedFile::readAt);
+            if (points.getAll().isEmpty()) {
+                points = decoded;
+            } else if (!decoded.getAll().isEmpty()) {
+                Merged all = merged.get(time);
+                // an index that is built again or decoded again is a new instance
+                if (all == null || all.added != points || all.decoded != decoded) {
+                    all = new Merged(points, decoded);
+                    merged.put(time, all);
+                }
+                points = all.points;
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Builds the index of the records added at {@code time}, unless another reader just did.
+     */
+    private synchronized CloudPointsAtTime buildIndex(int time)
+    {
+        CloudPointsAtTime points = cloudPoints.get(time);
+        if (points == null) {
+            List<StampedCloudPoints> records = added.get(time);
+            if (records == null) {
+                return CloudPointsAtTime.EMPTY;
+            }
+            points = CloudPointsAtTime.of(records);
+            cloudPoints.put(time, points);
+        }
+        return points;
+    }
+
+    /**
+     * Reads the source up to the first record after {@code time}.
+     *
+     * @throws IllegalStateException if the source is not sorted by time.
+     */
+    private synchronized void readUpTo(int time)
+    {
+        if (sourceError != null) {
+            throw new IllegalStateException(sourceError);
+        }
+        while (lastReadTime <= time) {
+            if (!source.hasNext()) {
+                lastReadTime = Integer.MAX_VALUE;
+                break;
+            }
+            StampedCloudPoints record = source.next();
+            if (record.getTime() < lastReadTime) {
+                // its time may have been answered without it, or forgotten already
+                sourceError = "The LiDAR records are not sorted by time: a record of time " + record.getTime()
+                    + " follows one of time " + lastReadTime + ", they cannot be streamed";
+                throw new IllegalStateException(sourceError);
+            }
+            if (record.getTime() >= firstRetainedTime) {
+                addCloudPoints(record);
+            }
+            // published after the record, so a reader that sees it finds the record
+            lastReadTime = record.getTime();
+        }
     }
     
     /**
-     * Clears all stored cloud points.
+     * The index of the added and the decoded records of a time, with the two indexes it
+     * was built from.
+     */
+    private static final class Merged
+    {
+        private final CloudPointsAtTime added;
+        private final CloudPointsAtTime decoded;
+        private final CloudPointsAtTime points;
+
+        Merged(CloudPointsAtTime added, CloudPointsAtTime decoded)
+        {
+            this.added = added;
+            this.decoded = decoded;
+            List<StampedCloudPoints> all = new ArrayList<>(added.getAll());
+            all.addAll(decoded.getAll());
+            this.points = CloudPointsAtTime.of(all);
+        }
+    }
+
+    /**
+     * Clears all stored cloud points and forgets the sources, and unfreezes the database.
      */
     public synchronized void clearCloudPoints() {
+        added.clear();
         cloudPoints.clear();
+        mapped.clear();
+        merged.clear();
+        advancedTo = Integer.MIN_VALUE;
+        source = null;
+        file = null;
+        lastReadTime = Integer.MIN_VALUE;
+        firstRetainedTime = Integer.MIN_VALUE;
+        sourceError = null;
+        frozen = null;
     }
 }
@@ -0,0 +1,165 @@
+package bgu.spl.mics.application.objects;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * The x and y coordinates of a list of cloud points, kept in two packed arrays
+ * instead of a {@link CloudPoint} object per point.
+ * <p>
+ * A point cloud never changes once it was built, so the LiDAR database, the tracked
+ * objects and the landmarks share it instead of copying it. In JSON it is written as
+ * the list of its points, e.g. [{"x": 1.0, "y": 2.0}].
+ */
+@JsonAdapter(PointCloud.Adapter.class)
+public final class PointCloud {
+    public static final PointCloud EMPTY = new PointCloud(new double[0], new double[0]);
+
+    private final double[] xs;
+    private final double[] ys;
+
+    private PointCloud(double[] xs, double[] ys) {
+        this.xs = xs;
+        this.ys = ys;
+    }
+
+    /**
+     * @return a point cloud with the coordinates of {@code points}, in their order.
+     */
+    public static PointCloud of(List<CloudPoint> points) {
+        Builder builder = new Builder(points.size());
+        for (CloudPoint point : points) {
+            builder.add(point.getX(), point.getY());
+        }
+        return builder.build();
+    }
+
+    public int size() {
+        return xs.length;
+    }
+
+    public double getX(int index) {
+        return xs[index];
+    }
+
+    public double getY(int index) {
+        return ys[index];
+    }
+
+    /**
+     * @return this point cloud with {@code x}, {@code y} added at the end.
+     */
+    public PointCloud with(double x, double y) {
+        double[] newXs = Arrays.copyOf(xs, xs.length + 1);
+        double[] newYs = Arrays.copyOf(ys, ys.length + 1);
+        newXs[xs.length] = x;
+        newYs[ys.length] = y;
+        return new PointCloud(newXs, newYs);
+    }
+
+    /**
+     * @return a read only view of the points. Every call to get builds a new {@link CloudPoint}.
+     */
+    public List<CloudPoint> asList() {
+        return new AbstractList<CloudPoint>() {
+            @Override
+            public CloudPoint get(int index) {
+                return new CloudPoint(xs[index], ys[index]);
+            }
+
+            @Override
+            public int size() {
+                return xs.length;
+            }
+        };
+    }
+
+    /**
+     * Builds a point cloud one point at a time.
+     */
+    public static final class Builder {
+        private double[] xs;
+        private double[] ys;
+        private int size = 0;
+
+        public Builder() {
+            this(8);
+        }
+
+        public Builder(int expectedSize) {
+            this.xs = new double[Math.max(expectedSize, 1)];
+            this.ys = new double[xs.length];
+        }
+
+        public Builder add(double x, double y) {
+            if (size == xs.length) {
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+            }
+            xs[size] = x;
+            ys[size] = y;
+            size++;
+            return this;
+        }
+
+        public PointCloud build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+            return new PointCloud(size == xs.length ? xs : Arrays.copyOf(xs, size), size == ys.length ? ys : Arrays.copyOf(ys, size));
+        }
+    }
+
+    /**
+     * Writes and reads a point cloud as the list of its points.
+     */
+    static final class Adapter extends TypeAdapter<PointCloud> {
+        @Override
+        public void write(JsonWriter out, PointCloud cloud) throws IOException {
+            if (cloud == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginArray();
+            for (int i = 0; i < cloud.size(); i++) {
+                out.beginObject();
+                out.name("x").value(cloud.xs[i]);
+                out.name("y").value(cloud.ys[i]);
+                out.endObject();
+            }
+            out.endArray();
+        }
+
+        @Override
+        public PointCloud read(JsonReader in) throws IOException {
+            Builder builder = new Builder();
+            in.beginArray();
+            while (in.hasNext()) {
+                double x = 0;
+                double y = 0;
+                in.beginObject();
+                while (in.hasNext()) {
+                    String name = in.nextName();
+                    if (name.equals("x")) {
+                        x = in.nextDouble();
+                    } else if (name.equals("y")) {
+                        y = in.nextDouble();
+                    } else {
+                        in.skipValue();
+                    }
+                }
+                in.endObject();
+                builder.add(x, y);
+            }
+            in.endArray();
+            return builder.build();
+        }
+    }
+}
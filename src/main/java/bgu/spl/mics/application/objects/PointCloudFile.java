@@ -0,0 +1,391 @@
+package bgu.spl.mics.application.objects;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A LiDAR recording in a compact binary file, read through a memory mapping so that
+ * opening it costs the same for any size and the page cache decides what stays in memory.
+ * <p>
+ * The file holds, in order, all ints big-endian:
+ * <ul>
+ * <li>a header: the magic number, the version, the number of times, the number of records,
+ * the number of id entries and the number of bytes of the ids;</li>
+ * <li>the time index, sorted by time: the time, its first record, its number of records,
+ * its first id entry and its number of id entries;</li>
+ * <li>the id index, the entries of every time sorted by the bytes of the id: the offset and
+ * length of the id, the first reference and the number of references;</li>
+ * <li>the references, the number of every record of an id entry, in the order of the recording;</li>
+ * <li>the records, grouped by time in the order of the recording: the first point and the
+ * number of points;</li>
+ * <li>the ids, UTF-8, every distinct id once;</li>
+ * <li>the points, an x and a y float each.</li>
+ * </ul>
+ * The coordinates are floats, so they keep about 7 significant digits.
+ */
+public final class PointCloudFile {
+    private static final int MAGIC = 0x47525043; // "GRPC"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 24;
+    private static final int TIME_ENTRY_BYTES = 20;
+    private static final int ID_ENTRY_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+    private static final int RECORD_ENTRY_BYTES = 8;
+    private static final int POINT_BYTES = 8;
+    private static final String ERROR_ID = "ERROR";
+
+    private final ByteBuffer buffer;
+    private final int timeCount;
+    private final int recordCount;
+    private final int idEntriesPosition;
+    private final int referencesPosition;
+    private final int recordsPosition;
+    private final int idsPosition;
+    private final int pointsPosition;
+
+    private PointCloudFile(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a point cloud file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported point cloud file version " + buffer.getInt(4));
+        }
+        this.buffer = buffer;
+        this.timeCount = buffer.getInt(8);
+        this.recordCount = buffer.getInt(12);
+        this.idEntriesPosition = HEADER_BYTES + timeCount * TIME_ENTRY_BYTES;
+        this.referencesPosition = idEntriesPosition + buffer.getInt(16) * ID_ENTRY_BYTES;
+        this.recordsPosition = referencesPosition + recordCount * REFERENCE_BYTES;
+        this.idsPosition = recordsPosition + recordCount * RECORD_ENTRY_BYTES;
+        this.pointsPosition = idsPosition + buffer.getInt(20);
+    }
+
+    /**
+     * @return true if {@code path} starts like a point cloud file.
+     */
+    public static boolean isPointCloudFile(Path path) {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Maps {@code path} to memory, without reading it.
+     * @throws IOException if it cannot be mapped or is not a point cloud file.
+     */
+    public static PointCloudFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large to map");
+            }
+            // the mapping stays valid after the channel is closed
+            return new PointCloudFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return the records of {@code time}, in the order of the recording, empty if there are none.
+     */
+    public List<StampedCloudPoints> read(int time) {
+        return readAt(time).getAll();
+    }
+
+    /**
+     * Reads the records of {@code time} indexed by object id. Every id is decoded once,
+     * and the records are grouped by the id index of the file instead of by hashing.
+     * @return the records of {@code time}, empty if there are none.
+     */
+    public CloudPointsAtTime readAt(int time) {
+        int entry = findTime(time);
+        if (entry < 0) {
+            return CloudPointsAtTime.EMPTY;
+        }
+        int firstRecord = buffer.getInt(entry + 4);
+        StampedCloudPoints[] records = new StampedCloudPoints[buffer.getInt(entry + 8)];
+        int firstIdEntry = buffer.getInt(entry + 12);
+        int idEntryCount = buffer.getInt(entry + 16);
+        Map<String, List<StampedCloudPoints>> byId = new HashMap<>(idEntryCount * 2);
+        boolean error = false;
+        for (int i = firstIdEntry; i < firstIdEntry + idEntryCount; i++) {
+            int idEntry = idEntriesPosition + i * ID_ENTRY_BYTES;
+            String id = readId(idEntry);
+            List<StampedCloudPoints> sameId = readRecords(id, time, idEntry);
+            for (int j = 0; j < sameId.size(); j++) {
+                records[referenceAt(idEntry, j) - firstRecord] = sameId.get(j);
+            }
+            byId.put(id, sameId);
+            error = error || ERROR_ID.equals(id);
+        }
+        return new CloudPointsAtTime(Collections.unmodifiableList(Arrays.asList(records)), byId, error);
+    }
+
+    /**
+     * Reads only the records of object {@code id} at {@code time}, found through the id index.
+     * @return the records of {@code id} at {@code time}, in the order of the recording, empty if there are none.
+     */
+    public List<StampedCloudPoints> read(int time, String id) {
+        int entry = findTime(time);
+        if (entry < 0) {
+            return Collections.emptyList();
+        }
+        byte[] key = id.getBytes(StandardCharsets.UTF_8);
+        int low = buffer.getInt(entry + 12);
+        int high = low + buffer.getInt(entry + 16) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int idEntry = idEntriesPosition + middle * ID_ENTRY_BYTES;
+            int compared = compareId(key, idEntry);
+            if (compared > 0) {
+                low = middle + 1;
+            } else if (compared < 0) {
+                high = middle - 1;
+            } else {
+                return readRecords(id.intern(), time, idEntry);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return the position of the time index entry of {@code time}, or -1 if it has no records.
+     */
+    private int findTime(int time) {
+        int low = 0;
+        int high = timeCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = HEADER_BYTES + middle * TIME_ENTRY_BYTES;
+            int entryTime = buffer.getInt(entry);
+            if (entryTime < time) {
+                low = middle + 1;
+            } else if (entryTime > time) {
+                high = middle - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private String readId(int idEntry) {
+        int offset = idsPosition + buffer.getInt(idEntry);
+        byte[] id = new byte[buffer.getInt(idEntry + 4)];
+        for (int i = 0; i < id.length; i++) {
+            id[i] = buffer.get(offset + i);
+        }
+        return new String(id, StandardCharsets.UTF_8).intern();
+    }
+
+    private int compareId(byte[] key, int idEntry) {
+        int offset = idsPosition + buffer.getInt(idEntry);
+        int length = buffer.getInt(idEntry + 4);
+        for (int i = 0; i < Math.min(key.length, length); i++) {
+            int compared = Integer.compare(key[i] & 0xff, buffer.get(offset + i) & 0xff);
+            if (compared != 0) {
+                return compared;
+            }
+        }
+        return Integer.compare(key.length, length);
+    }
+
+    private int referenceAt(int idEntry, int index) {
+        return buffer.getInt(referencesPosition + (buffer.getInt(idEntry + 8) + index) * REFERENCE_BYTES);
+    }
+
+    private List<StampedCloudPoints> readRecords(String id, int time, int idEntry) {
+        int count = buffer.getInt(idEntry + 12);
+        List<StampedCloudPoints> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(readRecord(id, time, recordsPosition + referenceAt(idEntry, i) * RECORD_ENTRY_BYTES));
+        }
+        return Collections.unmodifiableList(records);
+    }
+
+    private StampedCloudPoints readRecord(String id, int time, int entry) {
+        int point = pointsPosition + buffer.getInt(entry) * POINT_BYTES;
+        int count = buffer.getInt(entry + 4);
+        PointCloud.Builder points = new PointCloud.Builder(count);
+        for (int i = 0; i < count; i++, point += POINT_BYTES) {
+            points.add(buffer.getFloat(point), buffer.getFloat(point + 4));
+        }
+        return new StampedCloudPoints(id, time, points.build());
+    }
+
+    /**
+     * Writes {@code records} to {@code target} as a point cloud file. The points are
+     * written as they are read, so only the index of the recording is held in memory.
+     * @throws IOException if a file cannot be written, or the recording does not fit in a mapping.
+     */
+    public static void write(Iterator<StampedCloudPoints> records, Path target) throws IOException {
+        Path pointsFile = Files.createTempFile(target.toAbsolutePath().getParent(), "points", ".tmp");
+        try {
+            int[] times = new int[64];
+            int[] firstPoints = new int[64];
+            int[] pointCounts = new int[64];
+            int[] idIndexes = new int[64];
+            Map<String, Integer> idIndex = new HashMap<>();
+            List<byte[]> ids = new ArrayList<>();
+            int count = 0;
+            long pointCount = 0;
+            try (DataOutputStream points = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(pointsFile)))) {
+                while (records.hasNext()) {
+                    StampedCloudPoints record = records.next();
+                    if (count == times.length) {
+                        times = Arrays.copyOf(times, count * 2);
+                        firstPoints = Arrays.copyOf(firstPoints, count * 2);
+                        pointCounts = Arrays.copyOf(pointCounts, count * 2);
+                        idIndexes = Arrays.copyOf(idIndexes, count * 2);
+                    }
+                    PointCloud cloud = record.getPoints();
+                    times[count] = record.getTime();
+                    firstPoints[count] = (int) pointCount;
+                    pointCounts[count] = cloud.size();
+                    Integer index = idIndex.get(record.getId());
+                    if (index == null) {
+                        index = ids.size();
+                        idIndex.put(record.getId(), index);
+                        ids.add(record.getId().getBytes(StandardCharsets.UTF_8));
+                    }
+                    idIndexes[count] = index;
+                    for (int i = 0; i < cloud.size(); i++) {
+                        points.writeFloat((float) cloud.getX(i));
+                        points.writeFloat((float) cloud.getY(i));
+                    }
+                    count++;
+                    pointCount += cloud.size();
+                    if (pointCount > Integer.MAX_VALUE / POINT_BYTES) {
+                        throw new IOException("The recording is too large to map");
+                    }
+                }
+            }
+
+            // stable, the records of a time keep the order of the recording
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            final int[] recordTimes = times;
+            Arrays.sort(order, (a, b) -> Integer.compare(recordTimes[a], recordTimes[b]));
+
+            // the time entries and the id entries of every time, sorted by id
+            int[] timeFirsts = new int[count];
+            int[] timeIdEntries = new int[count];
+            int timeCount = 0;
+            int[] entryIds = new int[count];
+            int[] entryReferenceCounts = new int[count];
+            int[] references = new int[count];
+            int entryCount = 0;
+            int referenceCount = 0;
+            for (int i = 0; i < count; ) {
+                int first = i;
+                Map<Integer, List<Integer>> sameId = new HashMap<>();
+                for (; i < count && times[order[i]] == times[order[first]]; i++) {
+                    sameId.computeIfAbsent(idIndexes[order[i]], id -> new ArrayList<>()).add(i);
+                }
+                List<Integer> timeIds = new ArrayList<>(sameId.keySet());
+                timeIds.sort((a, b) -> compareIds(ids.get(a), ids.get(b)));
+                timeFirsts[timeCount] = first;
+                timeIdEntries[timeCount] = timeIds.size();
+                timeCount++;
+                for (Integer id : timeIds) {
+                    entryIds[entryCount] = id;
+                    entryReferenceCounts[entryCount] = sameId.get(id).size();
+                    entryCount++;
+                    for (int record : sameId.get(id)) {
+                        references[referenceCount++] = record;
+                    }
+                }
+            }
+            int[] idOffsets = new int[ids.size()];
+            int idBytes = 0;
+            for (int i = 0; i < ids.size(); i++) {
+                idOffsets[i] = idBytes;
+                idBytes += ids.get(i).length;
+            }
+            long size = HEADER_BYTES + (long) timeCount * TIME_ENTRY_BYTES + (long) entryCount * ID_ENTRY_BYTES
+                + (long) count * (REFERENCE_BYTES + RECORD_ENTRY_BYTES) + idBytes + pointCount * POINT_BYTES;
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("The recording is too large to map");
+            }
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(timeCount);
+                out.writeInt(count);
+                out.writeInt(entryCount);
+                out.writeInt(idBytes);
+                for (int i = 0, entry = 0; i < timeCount; i++) {
+                    int next = i + 1 < timeCount ? timeFirsts[i + 1] : count;
+                    out.writeInt(times[order[timeFirsts[i]]]);
+                    out.writeInt(timeFirsts[i]);
+                    out.writeInt(next - timeFirsts[i]);
+                    out.writeInt(entry);
+                    out.writeInt(timeIdEntries[i]);
+                    entry += timeIdEntries[i];
+                }
+                for (int i = 0, reference = 0; i < entryCount; i++) {
+                    out.writeInt(idOffsets[entryIds[i]]);
+                    out.writeInt(ids.get(entryIds[i]).length);
+                    out.writeInt(reference);
+                    out.writeInt(entryReferenceCounts[i]);
+                    reference += entryReferenceCounts[i];
+                }
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(references[i]);
+                }
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(firstPoints[order[i]]);
+                    out.writeInt(pointCounts[order[i]]);
+                }
+                for (byte[] id : ids) {
+                    out.write(id);
+                }
+                try (InputStream points = Files.newInputStream(pointsFile)) {
+                    byte[] chunk = new byte[1 << 16];
+                    int read;
+                    while ((read = points.read(chunk)) > 0) {
+                        out.write(chunk, 0, read);
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(pointsFile);
+        }
+    }
+
+    /**
+     * Compares two ids by their unsigned bytes, the order of the id index.
+     */
+    private static int compareIds(byte[] a, byte[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            int compared = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+            if (compared != 0) {
+                return compared;
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+}
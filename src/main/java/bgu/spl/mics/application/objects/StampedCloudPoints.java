@@ -1,30 +1,35 @@
 package bgu.spl.mics.application.objects;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Represents a group of cloud points corresponding to a specific timestamp.
  * Used by the LiDAR system to store and process point cloud data for tracked objects.
+ * The points are kept in a {@link PointCloud}, which the tracked objects share.
  */
 public class StampedCloudPoints 
 {
     private String id;
     private int time;
-    private List<CloudPoint> coordinates;
+    private PointCloud points;
 
     public StampedCloudPoints(String id, int time)
     {
         this.id = id;
         this.time = time;
-        this.coordinates = new ArrayList<CloudPoint>();
+        this.points = PointCloud.EMPTY;
     }
 
     public StampedCloudPoints(String id,  int time, List<CloudPoint> coordinates)
+    {
+        this(id, time, PointCloud.of(coordinates));
+    }
+
+    public StampedCloudPoints(String id, int time, PointCloud points)
     {
         this.id = id;
         this.time = time;
-        this.coordinates = coordinates;
+        this.points = points;
     }
 
     public String getId()
@@ -39,11 +44,19 @@ public class StampedCloudPoints
 
     public synchronized void addCloudPoints(CloudPoint cPoint)
     {
-        this.coordinates.add(cPoint);
+        this.points = this.points.with(cPoint.getX(), cPoint.getY());
+    }
+
+    /**
+     * @return A read only view of the points.
+     */
+    public synchronized List<CloudPoint> getCoordinates()
+    {
+        return this.points.asList();
     }
 
-    public List<CloudPoint> getCoordinates()
+    public synchronized PointCloud getPoints()
     {
-        return List.copyOf(this.coordinates);
+        return this.points;
     }
 }
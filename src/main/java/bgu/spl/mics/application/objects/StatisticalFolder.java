@@ -1,6 +1,7 @@
 package bgu.spl.mics.application.objects;
 
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Holds statistical information about the system's operation.
@@ -12,6 +13,11 @@ public class StatisticalFolder {
     private AtomicInteger numDetectedObjects;  
     private AtomicInteger numTrackedObjects;    
     private AtomicInteger numLandmarks;         
+    // how late the real time ticks were sent, not part of the output file
+    private AtomicInteger timedTicks;
+    private AtomicInteger overrunTicks;
+    private AtomicLong totalTickLatenessNanos;
+    private AtomicLong maxTickLatenessNanos;
 
     private static class StaticalFolderHolder {
         private static final StatisticalFolder INSTANCE = new StatisticalFolder();
@@ -22,6 +28,10 @@ public class StatisticalFolder {
         this.numDetectedObjects = new AtomicInteger();
         this.numTrackedObjects = new AtomicInteger();
         this.numLandmarks = new AtomicInteger();
+        this.timedTicks = new AtomicInteger();
+        this.overrunTicks = new AtomicInteger();
+        this.totalTickLatenessNanos = new AtomicLong();
+        this.maxTickLatenessNanos = new AtomicLong();
     }
 
     public static StatisticalFolder getInstance() {
@@ -60,6 +70,54 @@ public class StatisticalFolder {
         this.numLandmarks.getAndIncrement();
     }
 
+    /**
+     * @return the number of ticks that were sent against a real time deadline.
+     */
+    public int getTimedTicks() {
+        return this.timedTicks.get();
+    }
+
+    /**
+     * @return the number of ticks that were due while the previous tick was not handled yet.
+     */
+    public int getOverrunTicks() {
+        return this.overrunTicks.get();
+    }
+
+    public long getMaxTickLatenessNanos() {
+        return this.maxTickLatenessNanos.get();
+    }
+
+    public long getMeanTickLatenessNanos() {
+        int ticks = this.timedTicks.get();
+        return ticks == 0 ? 0 : this.totalTickLatenessNanos.get() / ticks;
+    }
+
+    /**
+     * Records how late a tick was sent after its deadline.
+     *
+     * @param latenessNanos The time between the deadline and the tick.
+     * @param overrun       True if the previous tick was not handled yet when this one was due.
+     */
+    public void recordTickLateness(long latenessNanos, boolean overrun) {
+        this.timedTicks.incrementAndGet();
+        if (overrun) {
+            this.overrunTicks.incrementAndGet();
+        }
+        this.totalTickLatenessNanos.addAndGet(latenessNanos);
+        this.maxTickLatenessNanos.accumulateAndGet(latenessNanos, Math::max);
+    }
+
+    /**
+     * Clears the tick lateness counters, for unit tests.
+     */
+    public void cleanTickLateness() {
+        this.timedTicks.set(0);
+        this.overrunTicks.set(0);
+        this.totalTickLatenessNanos.set(0);
+        this.maxTickLatenessNanos.set(0);
+    }
+
     @Override
     public synchronized String toString() {
         return "StatisticalFolder{" +
@@ -1,21 +1,26 @@
 package bgu.spl.mics.application.objects;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Represents an object tracked by the LiDAR.
  * This object includes information about the tracked object's ID, description, 
  * time of tracking, and coordinates in the environment.
+ * The coordinates are a {@link PointCloud} shared with the LiDAR database.
  */
 public class TrackedObject 
 {
     private String id;
     private String description;
     private int time;
-    private List<CloudPoint> coordinates;
+    private PointCloud coordinates;
 
     public TrackedObject(String id, String description, int time, List<CloudPoint> coordinates)
+    {
+        this(id, description, time, PointCloud.of(coordinates));
+    }
+
+    public TrackedObject(String id, String description, int time, PointCloud coordinates)
     {
         this.id = id;
         this.description = description;
@@ -28,7 +33,7 @@ public class TrackedObject
         this.id = id;
         this.description = description;
         this.time = time;
-        this.coordinates = new ArrayList<CloudPoint>();
+        this.coordinates = PointCloud.EMPTY;
     }
 
     public String getId()
@@ -46,13 +51,21 @@ public class TrackedObject
         return this.time;
     }
 
-    public void addCoordinate(CloudPoint point)
+    public synchronized void addCoordinate(CloudPoint point)
+    {
+        this.coordinates = this.coordinates.with(point.getX(), point.getY());
+    }
+
+    /**
+     * @return A read only view of the coordinates.
+     */
+    public synchronized List<CloudPoint> getCoordinates()
     {
-        this.coordinates.add(point);
+        return this.coordinates.asList();
     }
 
-    public List<CloudPoint> getCoordinates()
+    public synchronized PointCloud getPoints()
     {
-        return List.copyOf(this.coordinates);
+        return this.coordinates;
     }
 }
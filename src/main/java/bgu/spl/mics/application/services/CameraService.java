@@ -1,5 +1,7 @@
 package bgu.spl.mics.application.services;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 
 import bgu.spl.mics.MicroService;
@@ -20,6 +22,8 @@ public class CameraService extends MicroService {
     private int numOfDetectedObject;
     private StampedDetectedObjects lastFrame;
     private CountDownLatch latch;
+    // the events of the current tick, sent together once it was handled
+    private final List<DetectObjectsEvent> dueEvents = new ArrayList<>();
 
     public CameraService(Camera camera,CountDownLatch latch) {
         super("CameraService-" + camera.getId());
@@ -38,44 +42,43 @@ public class CameraService extends MicroService {
 
             // Check if the camera is active
             if (camera.getStatus() == STATUS.UP) {
-                for (StampedDetectedObjects obj : camera.getListOfDetectedObjects()) {
-                    // Check if the detection aligns with the camera's sending interval
-                    if (obj.getTime() + camera.getFrequency() == currentTick) 
+                // The frames whose detection aligns with the camera's sending interval
+                for (StampedDetectedObjects obj : camera.takeDue(currentTick)) {
+                    for (DetectedObject detectedObject : obj.getDetectedObjects()) 
                     {
-                        for (DetectedObject detectedObject : obj.getDetectedObjects()) 
+                        if(detectedObject.getId().equals("ERROR"))
                         {
-                            if(detectedObject.getId().equals("ERROR"))
-                            {
-                                this.camera.setStatus(STATUS.ERROR);
-                                this.sendBroadcast(new CrashedBroadcast(getName(), currentTick,detectedObject.getDescription()));
-                                break;
-                            }
-                            else
-                            {
-                                StatisticalFolder.getInstance().incrementDetectedObjects(1);
-                            }
+                            this.camera.setStatus(STATUS.ERROR);
+                            sendDueEvents();
+                            this.sendBroadcast(new CrashedBroadcast(getName(), currentTick,detectedObject.getDescription()));
+                            break;
                         }
-                        if(camera.getStatus() == STATUS.UP)
+                        else
                         {
-                            DetectObjectsEvent event = new DetectObjectsEvent(obj, getName());
-                            this.lastFrame = obj;
-                            sendEvent(event);
-                            this.numOfDetectedObject++;
-                            if(numOfDetectedObject == camera.getListOfDetectedObjects().size())
-                            {
-                                this.camera.setStatus(STATUS.DOWN);
-                            }
-                            for (DetectedObject o : obj.getDetectedObjects()) {
-                                System.out.println("Camera: "+this.camera.getCameraKey() +" detected " + o.getId() + " " + o.getDescription());
-                            }
+                            StatisticalFolder.getInstance().incrementDetectedObjects(1);
                         }
-                        if(camera.getStatus()==STATUS.ERROR)
+                    }
+                    if(camera.getStatus() == STATUS.UP)
+                    {
+                        DetectObjectsEvent event = new DetectObjectsEvent(obj, getName());
+                        this.lastFrame = obj;
+                        dueEvents.add(event);
+                        this.numOfDetectedObject++;
+                        if(!camera.hasRemaining())
                         {
-                            break;
+                            this.camera.setStatus(STATUS.DOWN);
+                        }
+                        for (DetectedObject o : obj.getDetectedObjects()) {
+                            System.out.println("Camera: "+this.camera.getCameraKey() +" detected " + o.getId() + " " + o.getDescription());
                         }
                     }
+                    if(camera.getStatus()==STATUS.ERROR)
+                    {
+                        break;
+                    }
                 }
             }
+            sendDueEvents();
             if(camera.getStatus() == STATUS.DOWN)
             {
                 this.terminate();
@@ -96,4 +99,13 @@ public class CameraService extends MicroService {
         this.latch.countDown();
         System.out.println(this.getName() + " finished init.");
     }
+
+    private void sendDueEvents()
+    {
+        if(!dueEvents.isEmpty())
+        {
+            sendEventsNoReply(dueEvents);
+            dueEvents.clear();
+        }
+    }
 }
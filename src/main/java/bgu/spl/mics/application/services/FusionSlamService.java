@@ -16,11 +16,10 @@ import bgu.spl.mics.application.messages.TerminatedBroadcast;
 import bgu.spl.mics.application.messages.TickBroadcast;
 import bgu.spl.mics.application.messages.TrackedObjectsEvent;
 import bgu.spl.mics.application.objects.CameraLastFrame;
-import bgu.spl.mics.application.objects.CloudPoint;
 import bgu.spl.mics.application.objects.FusionSlam;
-import bgu.spl.mics.application.objects.LandMark;
 import bgu.spl.mics.application.objects.LiDarLastFrame;
 import bgu.spl.mics.application.objects.OutputFile;
+import bgu.spl.mics.application.objects.PointCloud;
 import bgu.spl.mics.application.objects.Pose;
 import bgu.spl.mics.application.objects.StatisticalFolder;
 import bgu.spl.mics.application.objects.TrackedObject;
@@ -31,6 +30,8 @@ public class FusionSlamService extends MicroService {
     private OutputFile output;
     private final Map<Integer, List<TrackedObject>> trackedObjectBuffer = new HashMap<>();
     private CountDownLatch latch;
+    // set by the first TerminatedBroadcast, the output is written once the sensors ended
+    private boolean terminating = false;
 
     public FusionSlamService(FusionSlam fusionSlam, String output_file_directory_path, CountDownLatch fusionInitLatch) {
         super("FusionSlamService");
@@ -48,6 +49,9 @@ public class FusionSlamService extends MicroService {
                 this.connectedServices.add(event.getService());
             } else {
                 this.connectedServices.remove(event.getService());
+                if (this.terminating) {
+                    finishIfSensorsEnded();
+                }
             }
         });
 
@@ -84,13 +88,9 @@ public class FusionSlamService extends MicroService {
 
         // Handle TerminatedBroadcast
         subscribeBroadcast(TerminatedBroadcast.class, broadcast -> {
-            if (!(this.connectedServices.isEmpty() && MessageBusImpl.getInstance().isRegistered(LiDarService.class, this))) {
-                this.sendBroadcast(new TerminatedBroadcast(getName()));
-            } else {
-                this.output.setLandMarks(this.fusionSlam.getLandmarks());
-                this.output.uploadFile();
-                this.terminate();
-            }
+            // the services still connected announce their end, which finishes this one
+            this.terminating = true;
+            finishIfSensorsEnded();
         });
 
         subscribeBroadcast(LastFrameBroadcast.class, broadcast -> {
@@ -122,12 +122,29 @@ public class FusionSlamService extends MicroService {
         System.out.println("Fusion SLAM finished init");
     }
 
-    private void processTrackedObject(TrackedObject object, Pose pose) {
-        boolean isNewLandmark = true;
+    /**
+     * Writes the output and terminates once every connected service announced its end.
+     * A service announces it after the last message it sends here, right before it is
+     * unregistered, so the LiDARs are waited for instead of checked.
+     */
+    private void finishIfSensorsEnded() {
+        if (!this.connectedServices.isEmpty()) {
+            return;
+        }
+        try {
+            MessageBusImpl.getInstance().awaitUnregistered(LiDarService.class);
+        } catch (InterruptedException ex) {
+            System.err.println(ex);
+        }
+        this.output.setLandMarks(this.fusionSlam.getLandmarks());
+        this.output.uploadFile();
+        this.terminate();
+    }
 
+    private void processTrackedObject(TrackedObject object, Pose pose) {
         // Step 1: Transform new coordinates to global system
-        List<CloudPoint> newCoordinates = object.getCoordinates();
-        List<CloudPoint> transformedCoordinates = new ArrayList<>();
+        PointCloud newCoordinates = object.getPoints();
+        PointCloud.Builder transformed = new PointCloud.Builder(newCoordinates.size());
 
         double thetaRad = Math.toRadians(pose.getYaw());
         double cosTheta = Math.cos(thetaRad);
@@ -135,54 +152,47 @@ public class FusionSlamService extends MicroService {
         double xRobot = pose.getX();
         double yRobot = pose.getY();
 
-        for (CloudPoint point : newCoordinates) {
-            double xLocal = point.getX();
-            double yLocal = point.getY();
+        for (int i = 0; i < newCoordinates.size(); i++) {
+            double xLocal = newCoordinates.getX(i);
+            double yLocal = newCoordinates.getY(i);
 
             double xGlobal = cosTheta * xLocal - sinTheta * yLocal + xRobot;
             double yGlobal = sinTheta * xLocal + cosTheta * yLocal + yRobot;
 
-            transformedCoordinates.add(new CloudPoint(xGlobal, yGlobal));
+            transformed.add(xGlobal, yGlobal);
         }
+        PointCloud transformedCoordinates = transformed.build();
 
-        // Step 2: Check if landmark exists
-        for (LandMark landMark : this.fusionSlam.getLandmarks()) {
-            if (landMark.getId().equals(object.getId())) {
-                isNewLandmark = false;
-
-                List<CloudPoint> existingCoordinates = landMark.getCoordinateList();
-                List<CloudPoint> updatedCoordinates = new ArrayList<>();
-
-                int sizeL = existingCoordinates.size();
-                int sizeC = transformedCoordinates.size();
-                int k = Math.min(sizeL, sizeC);
-
-                for (int i = 0; i < k; i++) {
-                    CloudPoint lPoint = existingCoordinates.get(i);
-                    CloudPoint cPoint = transformedCoordinates.get(i);
-
-                    double avgX = 0.5 * (lPoint.getX() + cPoint.getX());
-                    double avgY = 0.5 * (lPoint.getY() + cPoint.getY());
-                    updatedCoordinates.add(new CloudPoint(avgX, avgY));
-                }
-
-                if (sizeC > k) {
-                    updatedCoordinates.addAll(transformedCoordinates.subList(k, sizeC));
-                }
+        // Step 2: Merge into the landmark of the same id, or add a new one
+        if (this.fusionSlam.mergeOrInsert(object.getId(), object.getDescription(), transformedCoordinates, FusionSlamService::averageCoordinates)) {
+            StatisticalFolder.getInstance().incrementLandmarks();
+        }
+    }
 
-                if (sizeL > k) {
-                    updatedCoordinates.addAll(existingCoordinates.subList(k, sizeL));
-                }
+    /**
+     * Averages the coordinates of a landmark with a new observation point by point; the
+     * points only one of them has are kept as they are.
+     */
+    private static PointCloud averageCoordinates(PointCloud existingCoordinates, PointCloud transformedCoordinates) {
+        int sizeL = existingCoordinates.size();
+        int sizeC = transformedCoordinates.size();
+        int k = Math.min(sizeL, sizeC);
+        PointCloud.Builder updatedCoordinates = new PointCloud.Builder(Math.max(sizeL, sizeC));
+
+        for (int i = 0; i < k; i++) {
+            double avgX = 0.5 * (existingCoordinates.getX(i) + transformedCoordinates.getX(i));
+            double avgY = 0.5 * (existingCoordinates.getY(i) + transformedCoordinates.getY(i));
+            updatedCoordinates.add(avgX, avgY);
+        }
 
-                landMark.setCoordinates(updatedCoordinates);
-                break;
-            }
+        for (int i = k; i < sizeC; i++) {
+            updatedCoordinates.add(transformedCoordinates.getX(i), transformedCoordinates.getY(i));
         }
 
-        if (isNewLandmark) {
-            StatisticalFolder.getInstance().incrementLandmarks();
-            LandMark newLandMark = new LandMark(object.getId(), object.getDescription(), transformedCoordinates);
-            this.fusionSlam.addLandmark(newLandMark);
+        for (int i = k; i < sizeL; i++) {
+            updatedCoordinates.add(existingCoordinates.getX(i), existingCoordinates.getY(i));
         }
+
+        return updatedCoordinates.build();
     }
 }
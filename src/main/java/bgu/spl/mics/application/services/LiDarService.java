@@ -2,6 +2,7 @@ package bgu.spl.mics.application.services;
 
 import bgu.spl.mics.MessageBusImpl;
 import bgu.spl.mics.MicroService;
+import bgu.spl.mics.application.objects.CloudPointsAtTime;
 import bgu.spl.mics.application.objects.LiDarWorkerTracker;
 import bgu.spl.mics.application.objects.STATUS;
 import bgu.spl.mics.application.objects.DetectedObject;
@@ -64,14 +65,12 @@ public class LiDarService extends MicroService {
             StampedDetectedObjects detectedObjects = event.getDetectedObjects();
             int detectionTime = detectedObjects.getTime();
 
-            for(StampedCloudPoints cloudPoints : liDarDataBase.getCloudPoints(detectionTime))
+            // indexed by object id, with the ERROR record flagged
+            CloudPointsAtTime cloudPointsAtTime = liDarDataBase.getCloudPointsAt(detectionTime);
+            if(cloudPointsAtTime.hasError())
             {
-                if(cloudPoints.getId().equals("ERROR"))
-                {
-                    workerTracker.setStatus(STATUS.ERROR);
-                    this.sendBroadcast(new CrashedBroadcast(getName(), detectionTime, "Lidar sensor disconnected"));
-                    break;
-                }
+                workerTracker.setStatus(STATUS.ERROR);
+                this.sendBroadcast(new CrashedBroadcast(getName(), detectionTime, "Lidar sensor disconnected"));
             }
 
             // Process the objects if the worker is active and the tick condition is met
@@ -79,21 +78,18 @@ public class LiDarService extends MicroService {
             {
                 List<TrackedObject> trackedObjects = new ArrayList<>();
                 for (DetectedObject detectedObject : detectedObjects.getDetectedObjects()) {
-                    for (StampedCloudPoints cloudPoints : liDarDataBase.getCloudPoints(detectionTime)) {
-                        if (cloudPoints.getId().equals(detectedObject.getId()) && cloudPoints.getTime() == detectionTime) 
-                        {
-                            TrackedObject trackedObject = new TrackedObject(detectedObject.getId(), detectedObject.getDescription(), detectionTime, cloudPoints.getCoordinates());
-                            trackedObjects.add(trackedObject);
-                            StatisticalFolder.getInstance().incrementTrackedObjects(1);
-                            workerTracker.getLastTrackedObjects().add(trackedObject);
-                        }
+                    for (StampedCloudPoints cloudPoints : cloudPointsAtTime.get(detectedObject.getId())) {
+                        TrackedObject trackedObject = new TrackedObject(detectedObject.getId(), detectedObject.getDescription(), detectionTime, cloudPoints.getPoints());
+                        trackedObjects.add(trackedObject);
+                        StatisticalFolder.getInstance().incrementTrackedObjects(1);
+                        workerTracker.getLastTrackedObjects().add(trackedObject);
                     }
                 }
                 if(currentTick.get() >= detectionTime + workerTracker.getFrequency())
                 {
                     if(this.workerTracker.getStatus() == STATUS.UP)
                     {
-                        this.sendEvent(new TrackedObjectsEvent(trackedObjects));
+                        this.sendEventNoReply(new TrackedObjectsEvent(trackedObjects));
                         this.lastFrame = trackedObjects;
                         for(TrackedObject trackedObject : trackedObjects)
                         {
@@ -117,19 +113,21 @@ public class LiDarService extends MicroService {
 
         // Handle TickBroadcast - Check pending objects on each tick
         subscribeBroadcast(TickBroadcast.class, tick -> {
+            liDarDataBase.advanceTo(tick.getCurrentTick());
             if(!(this.isCamerasFinished && MessageBusImpl.getInstance().isRegistered(CameraService.class,this) && !this.pendingObjects.containsKey(this.currentTick.get())))
             {
                 this.currentTick.set(tick.getCurrentTick());
                 if(this.pendingObjects.containsKey(currentTick.get()))
                 {
                     List<TrackedObject> penList = this.pendingObjects.get(this.currentTick.get());
-                    this.sendEvent(new TrackedObjectsEvent(penList));
+                    this.sendEventNoReply(new TrackedObjectsEvent(penList));
                     lastFrame.clear();
                     for(TrackedObject obj : penList)
                     {
                         lastFrame.add(obj);
                     }
-                    this.pendingObjects.get(this.currentTick.get()).removeAll(penList);
+                    // a new list, the sent one is still read by the fusion service
+                    this.pendingObjects.put(this.currentTick.get(), new ArrayList<>());
                 }
             }
             else
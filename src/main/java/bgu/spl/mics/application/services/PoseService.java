@@ -52,7 +52,7 @@ public class PoseService extends MicroService {
                 if (currentPose != null) {
                     // Create and send a PoseEvent
                     PoseEvent poseEvent = new PoseEvent(currentPose, getName());
-                    sendEvent(poseEvent);
+                    sendEventNoReply(poseEvent);
                     System.out.println("GPSIMU sent the pose");
                     this.posesSent++;
                 }
@@ -0,0 +1,71 @@
+package bgu.spl.mics.application.services;
+
+/**
+ * The real time deadlines of the {@link TimeService}, on the {@link System#nanoTime()}
+ * clock. Only does the arithmetic, the TimeService reads the clock and waits, so the
+ * rules can be checked with any times.
+ */
+final class TickSchedule
+{
+    private final long tickNanos;
+    private final TimeService.CatchUpPolicy catchUp;
+    // when the next tick is due
+    private long nextDeadline;
+
+    /**
+     * @param tickNanos The length of a tick.
+     * @param catchUp   How the schedule recovers from an overrun.
+     * @param start     When the first tick was sent, the next one is due a tick later.
+     */
+    TickSchedule(long tickNanos, TimeService.CatchUpPolicy catchUp, long start)
+    {
+        this.tickNanos = tickNanos;
+        this.catchUp = catchUp;
+        this.nextDeadline = start + tickNanos;
+    }
+
+    long nextDeadline()
+    {
+        return nextDeadline;
+    }
+
+    /**
+     * @param arrivedAt    When the TimeService got to the tick, before waiting for its deadline.
+     * @param servicesBusy Whether the services were still busy with the previous tick at the deadline.
+     * @return true if the tick overran.
+     */
+    boolean isOverrun(long arrivedAt, boolean servicesBusy)
+    {
+        return servicesBusy || arrivedAt - nextDeadline > 0;
+    }
+
+    /**
+     * @return true if the tick is only sent once the services are done.
+     */
+    boolean waitsForServices(boolean overrun)
+    {
+        return overrun && catchUp != TimeService.CatchUpPolicy.BURST;
+    }
+
+    /**
+     * Moves the deadline to the tick after the one sent at {@code sentAt}.
+     * @return how late the tick was sent after its deadline.
+     */
+    long advance(long sentAt, boolean overrun)
+    {
+        long lateness = sentAt - nextDeadline;
+        if(!overrun || catchUp == TimeService.CatchUpPolicy.BURST)
+        {
+            nextDeadline += tickNanos;
+        }
+        else if(catchUp == TimeService.CatchUpPolicy.SKIP && tickNanos > 0)
+        {
+            nextDeadline += tickNanos * (1 + lateness / tickNanos);
+        }
+        else
+        {
+            nextDeadline = sentAt + tickNanos;
+        }
+        return lateness;
+    }
+}
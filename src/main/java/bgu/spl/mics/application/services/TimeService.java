@@ -1,6 +1,9 @@
 package bgu.spl.mics.application.services;
 
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import bgu.spl.mics.MicroService;
 import bgu.spl.mics.application.messages.CrashedBroadcast;
@@ -12,12 +15,71 @@ import bgu.spl.mics.application.objects.StatisticalFolder;
 /**
  * TimeService acts as the global timer for the system, broadcasting TickBroadcast messages
  * at regular intervals and controlling the simulation's duration.
+ * <p>
+ * In real time, tick n is due n TickTimes after the first tick on the monotonic
+ * {@link System#nanoTime()} clock, so the time spent handling ticks does not add up
+ * to drift. How late every tick was sent is recorded in the {@link StatisticalFolder}.
  */
 public class TimeService extends MicroService 
 {
+    /**
+     * How the TimeService decides when to send the next tick.
+     */
+    public enum ClockMode
+    {
+        /**
+         * Every tick takes TickTime of wall-clock time. The clock does not wait for the
+         * services unless the {@link CatchUpPolicy} says so, so the output depends on
+         * how far they got when a tick is sent.
+         */
+        REAL_TIME,
+        /**
+         * The next tick is sent as soon as the other services handled the previous
+         * one, together with every message it caused, so a run takes as long as its
+         * work does. Every tick starts from the state a real-time run reaches when
+         * the services keep up with the clock.
+         * <p>
+         * Within a tick the services still run concurrently. The output is only the
+         * same from run to run, and the same as a real-time run that kept up, when it
+         * does not depend on the order of the messages of one tick. With two cameras
+         * sharing the LiDAR workers, or a crash in the middle of a tick, it does.
+         */
+        VIRTUAL_TIME
+    }
+
+    /**
+     * What happens in real time on an overrun, a tick that is due while the services
+     * are still busy with the previous one, or that the TimeService itself only got to
+     * after it was due.
+     */
+    public enum CatchUpPolicy
+    {
+        /**
+         * The tick is sent anyway and the schedule stays, so the clock never waits for
+         * the services and the ticks it missed are sent back to back.
+         */
+        BURST,
+        /**
+         * The tick is sent once the services are done, and the deadlines missed
+         * meanwhile are dropped: the next tick is due on the next deadline of the schedule.
+         */
+        SKIP,
+        /**
+         * The tick is sent once the services are done, and the schedule is moved by the
+         * overrun: the next tick is due a TickTime after the late one.
+         */
+        STRETCH
+    }
+
+    // parkNanos wakes up tens of microseconds late, so the end of a wait is spun instead
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
     private int currentTick;
     private int duration;
-    private int tickTime;
+    private final long tickNanos;
+    private final ClockMode clockMode;
+    private final CatchUpPolicy catchUp;
+    private TickSchedule schedule;
 
     /**
      * Constructor for TimeService.
@@ -26,11 +88,52 @@ public class TimeService extends MicroService
      * @param Duration  The total number of ticks before the service terminates.
      */
     public TimeService(int TickTime, int Duration) 
+    {
+        this(TickTime, Duration, ClockMode.REAL_TIME);
+    }
+
+    /**
+     * Constructor for TimeService.
+     *
+     * @param TickTime  The duration of each tick in milliseconds, unused in virtual time.
+     * @param Duration  The total number of ticks before the service terminates.
+     * @param clockMode When to send the next tick.
+     */
+    public TimeService(int TickTime, int Duration, ClockMode clockMode) 
+    {
+        this(TickTime, Duration, clockMode, CatchUpPolicy.BURST);
+    }
+
+    /**
+     * Constructor for TimeService.
+     *
+     * @param TickTime  The duration of each tick in milliseconds, unused in virtual time.
+     * @param Duration  The total number of ticks before the service terminates.
+     * @param clockMode When to send the next tick.
+     * @param catchUp   How the real time schedule recovers from an overrun.
+     */
+    public TimeService(int TickTime, int Duration, ClockMode clockMode, CatchUpPolicy catchUp) 
+    {
+        this(TickTime, TimeUnit.MILLISECONDS, Duration, clockMode, catchUp);
+    }
+
+    /**
+     * Constructor for TimeService.
+     *
+     * @param tickTime  The duration of each tick in {@code unit}, unused in virtual time.
+     * @param unit      The unit of {@code tickTime}, down to nanoseconds.
+     * @param Duration  The total number of ticks before the service terminates.
+     * @param clockMode When to send the next tick.
+     * @param catchUp   How the real time schedule recovers from an overrun.
+     */
+    public TimeService(long tickTime, TimeUnit unit, int Duration, ClockMode clockMode, CatchUpPolicy catchUp) 
     {
         super("TimeService");
         this.duration = Duration;
-        this.tickTime = TickTime;
+        this.tickNanos = unit.toNanos(tickTime);
         this.currentTick = 0;
+        this.clockMode = clockMode;
+        this.catchUp = catchUp;
     }
 
     /**
@@ -51,9 +154,17 @@ public class TimeService extends MicroService
         subscribeBroadcast(TickBroadcast.class, tick -> {
             try
             {
+                if(clockMode == ClockMode.VIRTUAL_TIME)
+                {
+                    // A tick barrier: everything the previous tick caused is done
+                    awaitQuiescence();
+                }
                 if(tick.getCurrentTick() < duration)
                 {
-                    Thread.sleep(tickTime);
+                    if(clockMode == ClockMode.REAL_TIME)
+                    {
+                        awaitDeadline();
+                    }
                     currentTick++;
                     System.out.println("Current Tick: " + currentTick);
                     StatisticalFolder.getInstance().incrementSystemRuntime();
@@ -69,6 +180,63 @@ public class TimeService extends MicroService
                 System.err.println(ex);
             }
         });
+        this.schedule = new TickSchedule(tickNanos, catchUp, System.nanoTime());
         this.sendBroadcast(new TickBroadcast(currentTick));
     }
+
+    /**
+     * Waits until the next tick is due, and on an overrun for what the catch-up policy
+     * asks for. Records how late the tick is and moves the deadline to the tick after it.
+     */
+    private void awaitDeadline() throws InterruptedException
+    {
+        long arrivedAt = System.nanoTime();
+        long now = arrivedAt;
+        long nextDeadline = schedule.nextDeadline();
+        if(nextDeadline - now > SPIN_NANOS)
+        {
+            // a pool worker waits as a managed blocker, so the pool adds a thread meanwhile
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker()
+            {
+                @Override
+                public boolean block() throws InterruptedException
+                {
+                    long remaining;
+                    while((remaining = nextDeadline - System.nanoTime()) > SPIN_NANOS)
+                    {
+                        LockSupport.parkNanos(TimeService.this, remaining - SPIN_NANOS);
+                        if(Thread.interrupted())
+                        {
+                            throw new InterruptedException();
+                        }
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable()
+                {
+                    return nextDeadline - System.nanoTime() <= SPIN_NANOS;
+                }
+            });
+            now = System.nanoTime();
+        }
+        while(now - nextDeadline < 0)
+        {
+            Thread.onSpinWait();
+            if(Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+            now = System.nanoTime();
+        }
+        // checked without waiting, only SKIP and STRETCH wait for the services
+        boolean overrun = schedule.isOverrun(arrivedAt, !isQuiescent());
+        if(schedule.waitsForServices(overrun))
+        {
+            awaitQuiescence();
+            now = System.nanoTime();
+        }
+        StatisticalFolder.getInstance().recordTickLateness(schedule.advance(now, overrun), overrun);
+    }
 }
@@ -0,0 +1,71 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FutureTest {
+
+    @Test
+    public void testGetWaitsForResolve() {
+        Future<String> future = new Future<>();
+        new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            future.resolve("done");
+        }).start();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            assertEquals("done", future.get());
+        });
+        assertTrue(future.isDone());
+    }
+
+    @Test
+    public void testGetWithTimeout() {
+        Future<String> future = new Future<>();
+        assertNull(future.get(20, TimeUnit.MILLISECONDS), "Nothing resolved it yet.");
+        assertFalse(future.isDone());
+
+        future.resolve(null);
+        future.resolve("too late");
+        assertTrue(future.isDone());
+        assertNull(future.get(20, TimeUnit.MILLISECONDS), "Only the first resolve counts.");
+    }
+
+    @Test
+    public void testTimedOutWaitsLeaveNoNodes() {
+        Future<String> future = new Future<>();
+        List<String> seen = new ArrayList<>();
+        future.thenAccept(seen::add);
+        for (int i = 0; i < 1000; i++) {
+            assertNull(future.get(1, TimeUnit.MICROSECONDS));
+        }
+        assertEquals(1, future.waiting(), "Only the callback should still wait.");
+
+        future.resolve("done");
+        assertEquals(List.of("done"), seen);
+        assertEquals(0, future.waiting());
+    }
+
+    @Test
+    public void testThenAcceptRunsInOrder() {
+        Future<Integer> future = new Future<>();
+        List<Integer> seen = new ArrayList<>();
+        future.thenAccept(result -> seen.add(result));
+        future.thenAccept(result -> seen.add(result + 1));
+        assertTrue(seen.isEmpty(), "Callbacks should wait for the result.");
+
+        future.resolve(1);
+        future.thenAccept(result -> seen.add(result + 2));
+        assertEquals(List.of(1, 2, 3), seen);
+        assertEquals(1, future.toCompletableFuture().join());
+    }
+}
@@ -0,0 +1,335 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MailboxTest {
+
+    @Test
+    public void testRingKeepsOrder() throws InterruptedException {
+        Mailbox mailbox = new RingBufferMailbox(4, WaitStrategy.PARK, OverflowPolicy.BLOCK, Collections.emptyMap(), new MailboxStats());
+        TestMessage[] messages = new TestMessage[10];
+        // goes around the ring more than once
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = new TestMessage(i);
+            assertTrue(mailbox.offer(messages[i]));
+            assertSame(messages[i], mailbox.take());
+        }
+        assertTrue(mailbox.isEmpty());
+    }
+
+    @Test
+    public void testRingDropsNewestWhenFull() throws InterruptedException {
+        Mailbox mailbox = new RingBufferMailbox(2, WaitStrategy.SPIN_THEN_PARK, OverflowPolicy.DROP_NEWEST, Collections.emptyMap(), new MailboxStats());
+        TestMessage first = new TestMessage(1);
+        assertTrue(mailbox.offer(first));
+        assertTrue(mailbox.offer(new TestMessage(2)));
+        assertFalse(mailbox.offer(new TestMessage(3)), "A full mailbox should drop the new message.");
+        assertEquals(2, mailbox.size());
+        assertSame(first, mailbox.take());
+    }
+
+    @Test
+    public void testRingHoldsNoMoreThanItsCapacity() throws InterruptedException {
+        // 3 messages on 4 slots
+        Mailbox mailbox = new MailboxSpec(MailboxSpec.Type.RING, 3, WaitStrategy.PARK, OverflowPolicy.DROP_NEWEST).create(new MailboxStats());
+        for (int lap = 0; lap < 3; lap++) {
+            TestMessage first = new TestMessage(0);
+            assertTrue(mailbox.offer(first));
+            assertTrue(mailbox.offer(new TestMessage(1)));
+            assertTrue(mailbox.offer(new TestMessage(2)));
+            assertFalse(mailbox.offer(new TestMessage(3)), "The capacity counts messages, not slots.");
+            assertEquals(3, mailbox.size());
+            assertSame(first, mailbox.take());
+            assertTrue(mailbox.offer(new TestMessage(4)), "A taken message makes room.");
+            mailbox.drainTo(new ArrayList<>());
+        }
+    }
+
+    @Test
+    public void testRingDeliversFromManySenders() {
+        for (WaitStrategy strategy : WaitStrategy.values()) {
+            Mailbox mailbox = new RingBufferMailbox(8, strategy, OverflowPolicy.BLOCK, Collections.emptyMap(), new MailboxStats());
+            int senders = 4;
+            int perSender = 2000;
+            for (int s = 0; s < senders; s++) {
+                int base = s * perSender;
+                new Thread(() -> {
+                    for (int i = 0; i < perSender; i++) {
+                        mailbox.offer(new TestMessage(base + i));
+                    }
+                }).start();
+            }
+
+            Set<Integer> received = new HashSet<>();
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                while (received.size() < senders * perSender) {
+                    assertTrue(received.add(((TestMessage) mailbox.take()).value), "Every message should arrive once.");
+                }
+            }, strategy.toString());
+        }
+    }
+
+    @Test
+    public void testTakeThrowsWhenInterrupted() {
+        for (MailboxSpec spec : new MailboxSpec[] { MailboxSpec.DEFAULT, new MailboxSpec(MailboxSpec.Type.RING, 4, WaitStrategy.PARK, OverflowPolicy.BLOCK) }) {
+            Mailbox mailbox = spec.create(new MailboxStats());
+            mailbox.offer(new TestMessage(0));
+            Thread.currentThread().interrupt();
+            assertThrows(InterruptedException.class, mailbox::take, spec.toString());
+        }
+    }
+
+    @Test
+    public void testDropOldestKeepsNewest() throws InterruptedException {
+        MailboxStats stats = new MailboxStats();
+        Mailbox mailbox = new MailboxSpec(MailboxSpec.Type.LINKED, 2, WaitStrategy.PARK, OverflowPolicy.DROP_OLDEST).create(stats);
+        TestMessage second = new TestMessage(2);
+        TestMessage third = new TestMessage(3);
+        mailbox.offer(new TestMessage(1));
+        mailbox.offer(second);
+        assertTrue(mailbox.offer(third));
+        assertEquals(1, stats.getDropped());
+        assertSame(second, mailbox.take());
+        assertSame(third, mailbox.take());
+    }
+
+    @Test
+    public void testDropOldestKeepsBlockingMessages() throws InterruptedException {
+        MailboxStats stats = new MailboxStats();
+        Map<Class<? extends Message>, OverflowPolicy> policies = new HashMap<>();
+        policies.put(TestMessage.class, OverflowPolicy.BLOCK);
+        Mailbox mailbox = new MailboxSpec(MailboxSpec.Type.LINKED, 2, WaitStrategy.PARK, OverflowPolicy.DROP_OLDEST, policies).create(stats);
+        TestMessage kept = new TestMessage(1);
+        LatestOnly newest = new LatestOnly();
+        mailbox.offer(kept);
+        mailbox.offer(new LatestOnly());
+        // the older message blocks its sender instead of being dropped, so the next one goes
+        assertTrue(mailbox.offer(newest));
+        assertEquals(1, stats.getDropped());
+        assertSame(kept, mailbox.take());
+        assertSame(newest, mailbox.take());
+
+        // only messages that must be kept wait, so the arriving one is dropped
+        mailbox.offer(new TestMessage(2));
+        mailbox.offer(new TestMessage(3));
+        assertFalse(mailbox.offer(new LatestOnly()));
+        assertEquals(2, stats.getDropped());
+        assertEquals(2, mailbox.size());
+    }
+
+    @Test
+    public void testCoalesceKeepsLatestInPlace() throws InterruptedException {
+        MailboxStats stats = new MailboxStats();
+        Map<Class<? extends Message>, OverflowPolicy> policies = new HashMap<>();
+        policies.put(LatestOnly.class, OverflowPolicy.COALESCE);
+        for (MailboxSpec.Type type : MailboxSpec.Type.values()) {
+            Mailbox mailbox = new MailboxSpec(type, 8, WaitStrategy.PARK, OverflowPolicy.BLOCK, policies).create(stats);
+            TestMessage before = new TestMessage(0);
+            TestMessage after = new TestMessage(1);
+            LatestOnly latest = new LatestOnly();
+            mailbox.offer(before);
+            mailbox.offer(new LatestOnly());
+            mailbox.offer(after);
+            mailbox.offer(latest);
+            assertEquals(3, mailbox.size(), type.toString());
+            assertSame(before, mailbox.take());
+            assertSame(latest, mailbox.take());
+            assertSame(after, mailbox.take());
+
+            // once taken, the next one waits in the queue again
+            LatestOnly next = new LatestOnly();
+            mailbox.offer(next);
+            assertSame(next, mailbox.take());
+        }
+        assertEquals(2, stats.getCoalesced());
+    }
+
+    @Test
+    public void testConcurrentCoalesceKeepsOneWaiting() throws InterruptedException {
+        Map<Class<? extends Message>, OverflowPolicy> policies = new HashMap<>();
+        policies.put(LatestOnly.class, OverflowPolicy.COALESCE);
+        int senders = 4;
+        int perSender = 5000;
+        for (MailboxSpec.Type type : MailboxSpec.Type.values()) {
+            MailboxStats stats = new MailboxStats();
+            Mailbox mailbox = new MailboxSpec(type, 8, WaitStrategy.PARK, OverflowPolicy.BLOCK, policies).create(stats);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < senders; i++) {
+                Thread sender = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int j = 0; j < perSender; j++) {
+                        assertTrue(mailbox.offer(new LatestOnly()));
+                    }
+                });
+                sender.start();
+                threads.add(sender);
+            }
+            start.countDown();
+            for (Thread sender : threads) {
+                sender.join();
+            }
+            // senders that found no holder at once all replace the one that got in
+            assertEquals(1, mailbox.size(), type.toString());
+            assertEquals(senders * perSender - 1, stats.getCoalesced(), type.toString());
+        }
+    }
+
+    @Test
+    public void testTakeBatchKeepsOrder() throws InterruptedException {
+        Map<Class<? extends Message>, OverflowPolicy> policies = new HashMap<>();
+        policies.put(LatestOnly.class, OverflowPolicy.COALESCE);
+        for (MailboxSpec.Type type : MailboxSpec.Type.values()) {
+            Mailbox mailbox = new MailboxSpec(type, 8, WaitStrategy.PARK, OverflowPolicy.BLOCK, policies).create(new MailboxStats());
+            List<Message> sent = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                sent.add(new TestMessage(i));
+            }
+            LatestOnly latest = new LatestOnly();
+            sent.add(2, latest);
+            for (Message m : sent) {
+                mailbox.offer(m == latest ? new LatestOnly() : m);
+            }
+            mailbox.offer(latest);
+
+            List<Message> batch = new ArrayList<>();
+            assertEquals(4, mailbox.takeBatch(batch, 4), type.toString());
+            assertEquals(2, mailbox.takeBatch(batch, 4), type.toString());
+            assertEquals(sent, batch, type.toString());
+            assertTrue(mailbox.isEmpty());
+        }
+    }
+
+    @Test
+    public void testOfferAllTakesOneEntry() throws InterruptedException {
+        Mailbox mailbox = new MailboxSpec(MailboxSpec.Type.LINKED, 0, WaitStrategy.PARK, OverflowPolicy.BLOCK).create(new MailboxStats());
+        List<Message> sent = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            sent.add(new TestMessage(i));
+        }
+        List<Message> dropped = new ArrayList<>();
+        assertEquals(4, mailbox.offerAll(sent.subList(0, 4), dropped));
+        assertTrue(mailbox.offer(sent.get(4)));
+        assertTrue(dropped.isEmpty());
+        assertEquals(5, mailbox.size());
+
+        assertSame(sent.get(0), mailbox.take());
+        List<Message> batch = new ArrayList<>();
+        batch.add(sent.get(0));
+        assertEquals(2, mailbox.takeBatch(batch, 2));
+        assertEquals(2, mailbox.size());
+        mailbox.takeBatch(batch, 8);
+        assertEquals(sent, batch);
+        assertTrue(mailbox.isEmpty());
+    }
+
+    @Test
+    public void testOfferAllCountsAgainstCapacity() throws InterruptedException {
+        Map<Class<? extends Message>, OverflowPolicy> policies = new HashMap<>();
+        policies.put(LatestOnly.class, OverflowPolicy.COALESCE);
+        for (MailboxSpec.Type type : MailboxSpec.Type.values()) {
+            Mailbox mailbox = new MailboxSpec(type, 2, WaitStrategy.PARK, OverflowPolicy.DROP_NEWEST).create(new MailboxStats());
+            List<Message> sent = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                sent.add(new TestMessage(i));
+            }
+            List<Message> dropped = new ArrayList<>();
+            assertEquals(2, mailbox.offerAll(sent, dropped), type.toString());
+            assertEquals(sent.subList(2, 4), dropped, "A full mailbox drops the rest of the batch");
+            assertEquals(2, mailbox.size(), type.toString());
+
+            // every message gets the policy of its class
+            Mailbox coalescing = new MailboxSpec(type, 2, WaitStrategy.PARK, OverflowPolicy.DROP_NEWEST, policies).create(new MailboxStats());
+            LatestOnly latest = new LatestOnly();
+            dropped.clear();
+            assertEquals(3, coalescing.offerAll(List.of(sent.get(0), new LatestOnly(), latest), dropped), type.toString());
+            assertTrue(dropped.isEmpty(), type.toString());
+            assertEquals(2, coalescing.size(), type.toString());
+            assertSame(sent.get(0), coalescing.take());
+            assertSame(latest, coalescing.take());
+        }
+    }
+
+    @Test
+    public void testBlockedPutLeavesPoolRoomForTheOwner() {
+        for (MailboxSpec.Type type : MailboxSpec.Type.values()) {
+            Mailbox mailbox = new MailboxSpec(type, 1, WaitStrategy.PARK, OverflowPolicy.BLOCK).create(new MailboxStats());
+            ForkJoinPool pool = new ForkJoinPool(1);
+            try {
+                // the only worker blocks on the full mailbox before the owner is submitted
+                ForkJoinTask<?> sender = pool.submit(() -> {
+                    for (int i = 0; i < 3; i++) {
+                        mailbox.offer(new TestMessage(i));
+                    }
+                });
+                List<Integer> received = new ArrayList<>();
+                ForkJoinTask<?> owner = pool.submit(() -> {
+                    for (int i = 0; i < 3; i++) {
+                        received.add(((TestMessage) mailbox.take()).value);
+                    }
+                    return null;
+                });
+                assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                    sender.join();
+                    owner.join();
+                }, type.toString());
+                assertEquals(List.of(0, 1, 2), received);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    public void testInboxCountsUntilSettled() throws InterruptedException {
+        QuiescenceTracker tracker = new QuiescenceTracker();
+        Inbox inbox = new Inbox(new MailboxSpec(MailboxSpec.Type.LINKED, 2, WaitStrategy.PARK, OverflowPolicy.DROP_OLDEST).create(new MailboxStats()), tracker);
+        inbox.offer(new TestMessage(1));
+        inbox.offer(new TestMessage(2));
+        // drops the first one
+        inbox.offer(new TestMessage(3));
+        assertEquals(2, tracker.unsettled());
+
+        inbox.deliver(inbox.mailbox.take());
+        assertEquals(1, tracker.unsettled());
+        inbox.detach();
+        assertEquals(0, tracker.unsettled());
+        inbox.offer(new TestMessage(4));
+        assertEquals(0, tracker.unsettled(), "A detached inbox counts nothing.");
+        assertTimeoutPreemptively(Duration.ofSeconds(5), tracker::await);
+    }
+
+    @Test
+    public void testRingRejectsDropOldest() {
+        assertThrows(IllegalArgumentException.class, () -> new MailboxSpec(MailboxSpec.Type.RING, 8, WaitStrategy.PARK, OverflowPolicy.DROP_OLDEST));
+    }
+
+    private static class LatestOnly implements Message {
+    }
+
+    private static class TestMessage implements Message {
+        private final int value;
+
+        TestMessage(int value) {
+            this.value = value;
+        }
+    }
+}
@@ -1,8 +1,22 @@
 package bgu.spl.mics;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import bgu.spl.mics.application.GurionRockRunner;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class MessageBusImplTest {
@@ -22,6 +36,12 @@ public class MessageBusImplTest {
         messageBus.register(testMicroService);
     }
 
+    @AfterEach
+    public void tearDown() {
+        // the messages it was sent and never took would keep the bus from ever being quiescent
+        messageBus.unregister(testMicroService);
+    }
+
     @Test
     public void testSubscribeEvent() {
         messageBus.subscribeEvent(TestEvent.class, testMicroService);
@@ -70,10 +90,374 @@ public class MessageBusImplTest {
             fail("awaitMessage should not throw an exception.");
         }
     }
+    @Test
+    public void testUnregisterRemovesSubscriptions() {
+        messageBus.subscribeEvent(UnregisterTestEvent.class, testMicroService);
+        messageBus.subscribeBroadcast(TestBroadcast.class, testMicroService);
+        messageBus.unregister(testMicroService);
+
+        assertNull(messageBus.sendEvent(new UnregisterTestEvent()), "No subscriber should be left for the event.");
+        messageBus.sendBroadcast(new TestBroadcast());
+        assertThrows(IllegalStateException.class, () -> messageBus.awaitMessage(testMicroService));
+    }
+
+    @Test
+    public void testSendEventRoundRobin() {
+        MicroService[] handlers = new MicroService[3];
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i] = new MicroService("Handler" + i) {
+                @Override
+                protected void initialize() {
+                }
+            };
+            messageBus.register(handlers[i]);
+            messageBus.subscribeEvent(RoundRobinTestEvent.class, handlers[i]);
+        }
+
+        List<RoundRobinTestEvent> sent = new ArrayList<>();
+        for (int i = 0; i < 3 * handlers.length; i++) {
+            RoundRobinTestEvent event = new RoundRobinTestEvent();
+            sent.add(event);
+            assertNotNull(messageBus.sendEvent(event), "Every event should have a handler.");
+        }
+
+        // each handler gets every third event, in the order they were sent
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (int i = 0; i < handlers.length; i++) {
+                for (int round = 0; round < 3; round++) {
+                    assertSame(sent.get(i + round * handlers.length), messageBus.awaitMessage(handlers[i]));
+                }
+            }
+        });
+        for (MicroService handler : handlers) {
+            messageBus.unregister(handler);
+        }
+    }
+
+    @Test
+    public void testSendEventsInOrder() {
+        MicroService[] handlers = new MicroService[2];
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i] = new MicroService("BatchHandler" + i) {
+                @Override
+                protected void initialize() {
+                }
+            };
+            messageBus.register(handlers[i]);
+            messageBus.subscribeEvent(BatchTestEvent.class, handlers[i]);
+        }
+
+        List<BatchTestEvent> sent = new ArrayList<>();
+        for (int i = 0; i < 3 * handlers.length; i++) {
+            sent.add(new BatchTestEvent());
+        }
+        List<Future<String>> futures = messageBus.sendEvents(sent);
+        assertEquals(sent.size(), futures.size());
+        assertFalse(futures.contains(null), "Every event should have a handler.");
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            List<Message> received = new ArrayList<>();
+            for (MicroService handler : handlers) {
+                received.clear();
+                assertEquals(3, messageBus.awaitMessages(handler, received));
+                for (int i = 1; i < received.size(); i++) {
+                    assertTrue(sent.indexOf(received.get(i - 1)) < sent.indexOf(received.get(i)), "A handler should get its events in the order they were sent.");
+                }
+            }
+        });
+        messageBus.complete(sent.get(0), "done");
+        assertEquals("done", futures.get(0).get());
+        for (MicroService handler : handlers) {
+            messageBus.unregister(handler);
+        }
+    }
+
+    @Test
+    public void testUnregisterHandsOverOutstandingEvents() {
+        MicroService[] handlers = new MicroService[2];
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i] = new MicroService("HandOverHandler" + i) {
+                @Override
+                protected void initialize() {
+                }
+            };
+            messageBus.register(handlers[i]);
+            messageBus.subscribeEvent(HandOverTestEvent.class, handlers[i]);
+        }
+
+        List<HandOverTestEvent> sent = new ArrayList<>();
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            sent.add(new HandOverTestEvent());
+            futures.add(messageBus.sendEvent(sent.get(i)));
+        }
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            // the first handler took one event and left one waiting
+            assertSame(sent.get(0), messageBus.awaitMessage(handlers[0]));
+            messageBus.unregister(handlers[0]);
+            assertTrue(futures.get(0).isDone(), "A taken event should be failed when its handler leaves.");
+            assertNull(futures.get(0).get());
+
+            // the waiting one moves to the other handler
+            assertSame(sent.get(1), messageBus.awaitMessage(handlers[1]));
+            assertSame(sent.get(3), messageBus.awaitMessage(handlers[1]));
+            assertSame(sent.get(2), messageBus.awaitMessage(handlers[1]));
+            messageBus.complete(sent.get(2), "moved");
+            assertEquals("moved", futures.get(2).get());
+        });
+        messageBus.unregister(handlers[1]);
+        assertTrue(futures.get(1).isDone() && futures.get(3).isDone(), "Every future should be resolved once nobody can handle it.");
+    }
+
+    @Test
+    public void testSendEventNoReply() {
+        assertFalse(messageBus.sendEventNoReply(new NoReplyTestEvent()), "Nobody subscribed to the event yet.");
+        messageBus.subscribeEvent(NoReplyTestEvent.class, testMicroService);
+
+        NoReplyTestEvent event = new NoReplyTestEvent();
+        assertTrue(messageBus.sendEventNoReply(event));
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            assertSame(event, messageBus.awaitMessage(testMicroService));
+        });
+        // nobody waits for the result, so completing it has no effect
+        messageBus.complete(event, "ignored");
+    }
+
+    @Test
+    public void testLeastLoadedPicksShortestQueue() {
+        MicroService[] subscribers = routerSubscribers(3);
+        int[] depths = {3, 1, 2};
+        EventRouter router = RoutingPolicy.LEAST_LOADED.newRouter();
+        for (int i = 0; i < 2 * subscribers.length; i++) {
+            assertEquals(1, router.select(subscribers, m -> depths[indexOf(subscribers, m)]), "Whichever subscriber it starts from.");
+        }
+    }
+
+    @Test
+    public void testLeastLoadedRotatesTies() {
+        MicroService[] subscribers = routerSubscribers(3);
+        EventRouter router = RoutingPolicy.LEAST_LOADED.newRouter();
+        for (int i = 0; i < 2 * subscribers.length; i++) {
+            assertEquals(i % subscribers.length, router.select(subscribers, m -> 0), "Idle subscribers should take turns.");
+        }
+        // over a full turn both of the shortest queues are picked, never the longest
+        int[] depths = {2, 1, 1};
+        Set<Integer> picked = new HashSet<>();
+        for (int i = 0; i < subscribers.length; i++) {
+            picked.add(router.select(subscribers, m -> depths[indexOf(subscribers, m)]));
+        }
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), picked);
+    }
+
+    @Test
+    public void testLeastLoadedCountsTheBatchBeingHandled() throws InterruptedException {
+        messageBus.setEventRouter(BusyBatchTestEvent.class, RoutingPolicy.LEAST_LOADED.newRouter());
+        CountDownLatch busySubscribed = new CountDownLatch(1);
+        CountDownLatch idleSubscribed = new CountDownLatch(1);
+        CountDownLatch sent = new CountDownLatch(1);
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger handledByBusy = new AtomicInteger();
+        AtomicInteger handledByIdle = new AtomicInteger();
+        MicroService busyHandler = new MicroService("BusyBatchHandler") {
+            @Override
+            protected void initialize() {
+                subscribeEvent(BusyBatchTestEvent.class, event -> {
+                    busy.countDown();
+                    awaitQuietly(release);
+                    handledByBusy.incrementAndGet();
+                });
+                subscribeBroadcast(StopBatchTestBroadcast.class, broadcast -> terminate());
+                busySubscribed.countDown();
+                // the events are sent before the loop starts, so it takes them in one batch
+                awaitQuietly(sent);
+            }
+        };
+        MicroService idleHandler = new MicroService("IdleBatchHandler") {
+            @Override
+            protected void initialize() {
+                subscribeEvent(BusyBatchTestEvent.class, event -> handledByIdle.incrementAndGet());
+                subscribeBroadcast(StopBatchTestBroadcast.class, broadcast -> terminate());
+                idleSubscribed.countDown();
+            }
+        };
+        Thread busyThread = new Thread(busyHandler);
+        Thread idleThread = new Thread(idleHandler);
+
+        try {
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                busyThread.start();
+                busySubscribed.await();
+                for (int i = 0; i < 3; i++) {
+                    messageBus.sendEventNoReply(new BusyBatchTestEvent());
+                }
+                sent.countDown();
+                // two events of its batch wait behind the running callback, its queue is empty
+                busy.await();
+                idleThread.start();
+                idleSubscribed.await();
+
+                // routed when they are sent
+                messageBus.sendEventNoReply(new BusyBatchTestEvent());
+                messageBus.sendEventNoReply(new BusyBatchTestEvent());
+                release.countDown();
+                while (handledByBusy.get() + handledByIdle.get() < 5) {
+                    Thread.sleep(1);
+                }
+                messageBus.sendBroadcast(new StopBatchTestBroadcast());
+                busyThread.join();
+                idleThread.join();
+            });
+        } finally {
+            // a failed run must not leave a handler behind on the bus
+            release.countDown();
+            messageBus.sendBroadcast(new StopBatchTestBroadcast());
+        }
+        assertEquals(2, handledByIdle.get(), "Both events should go to the handler without a batch.");
+        assertEquals(3, handledByBusy.get());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void testPowerOfTwoChoicesPicksShorterSample() {
+        MicroService[] subscribers = routerSubscribers(4);
+        int[] depths = {0, 3, 1, 2};
+        EventRouter router = RoutingPolicy.POWER_OF_TWO_CHOICES.newRouter();
+        for (int i = 0; i < 1000; i++) {
+            List<Integer> sampled = new ArrayList<>();
+            int chosen = router.select(subscribers, m -> {
+                sampled.add(indexOf(subscribers, m));
+                return depths[indexOf(subscribers, m)];
+            });
+            assertEquals(2, sampled.size(), "Two subscribers should be sampled.");
+            assertNotEquals(sampled.get(0), sampled.get(1), "The samples should be distinct.");
+            assertTrue(sampled.contains(chosen));
+            for (int index : sampled) {
+                assertTrue(depths[chosen] <= depths[index], "The longer of the samples should never be picked.");
+            }
+        }
+    }
+
+    @Test
+    public void testEventRoutingConfiguration() {
+        MicroService[] handlers = new MicroService[2];
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i] = new MicroService("RoutingHandler" + i) {
+                @Override
+                protected void initialize() {
+                }
+            };
+            messageBus.register(handlers[i]);
+            messageBus.subscribeEvent(ConfiguredRoutingTestEvent.class, handlers[i]);
+            messageBus.subscribeEvent(UnknownRoutingTestEvent.class, handlers[i]);
+        }
+        // the first handler has a message waiting
+        messageBus.subscribeBroadcast(RoutingTestBroadcast.class, handlers[0]);
+        messageBus.sendBroadcast(new RoutingTestBroadcast());
+
+        assertThrows(IllegalArgumentException.class, () -> RoutingPolicy.fromName("FASTEST"));
+        assertEquals(RoutingPolicy.LEAST_LOADED, RoutingPolicy.fromName(" least_loaded "));
+        Map<String, String> routing = new HashMap<>();
+        routing.put(ConfiguredRoutingTestEvent.class.getName(), "least_loaded");
+        routing.put(UnknownRoutingTestEvent.class.getName(), "FASTEST");
+        GurionRockRunner.configureEventRouting(routing);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            // least loaded, both go to the idle handler
+            ConfiguredRoutingTestEvent first = new ConfiguredRoutingTestEvent();
+            ConfiguredRoutingTestEvent second = new ConfiguredRoutingTestEvent();
+            messageBus.sendEvent(first);
+            messageBus.sendEvent(second);
+            assertSame(first, messageBus.awaitMessage(handlers[1]));
+            assertSame(second, messageBus.awaitMessage(handlers[1]));
+
+            // the unknown policy is ignored, so the events go round-robin
+            UnknownRoutingTestEvent third = new UnknownRoutingTestEvent();
+            UnknownRoutingTestEvent fourth = new UnknownRoutingTestEvent();
+            messageBus.sendEvent(third);
+            messageBus.sendEvent(fourth);
+            assertTrue(messageBus.awaitMessage(handlers[0]) instanceof RoutingTestBroadcast);
+            assertSame(third, messageBus.awaitMessage(handlers[0]));
+            assertSame(fourth, messageBus.awaitMessage(handlers[1]));
+        });
+        for (MicroService handler : handlers) {
+            messageBus.unregister(handler);
+        }
+    }
+
+    private static MicroService[] routerSubscribers(int count) {
+        MicroService[] subscribers = new MicroService[count];
+        for (int i = 0; i < count; i++) {
+            subscribers[i] = new MicroService("RouterSubscriber" + i) {
+                @Override
+                protected void initialize() {
+                }
+            };
+        }
+        return subscribers;
+    }
+
+    private static int indexOf(MicroService[] subscribers, MicroService m) {
+        for (int i = 0; i < subscribers.length; i++) {
+            if (subscribers[i] == m) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(m.getName());
+    }
+
     private static class TestEvent implements Event<String> {
         // Event implementation for testing
     }
 
+    private static class UnregisterTestEvent implements Event<String> {
+        // Event implementation used only by the unregister test
+    }
+
+    private static class RoundRobinTestEvent implements Event<String> {
+        // Event implementation used only by the round-robin test
+    }
+
+    private static class BatchTestEvent implements Event<String> {
+        // Event implementation used only by the batch send test
+    }
+
+    private static class HandOverTestEvent implements Event<String> {
+        // Event implementation used only by the unregister hand-over test
+    }
+
+    private static class NoReplyTestEvent implements Event<String> {
+        // Event implementation used only by the no-reply test
+    }
+
+    private static class ConfiguredRoutingTestEvent implements Event<String> {
+        // Event implementation used only by the routing configuration test
+    }
+
+    private static class BusyBatchTestEvent implements Event<String> {
+        // Event implementation used only by the least loaded batch test
+    }
+
+    private static class UnknownRoutingTestEvent implements Event<String> {
+        // Event implementation used only by the routing configuration test
+    }
+
+    private static class RoutingTestBroadcast implements Broadcast {
+        // Broadcast implementation used only by the routing configuration test
+    }
+
+    private static class StopBatchTestBroadcast implements Broadcast {
+        // Broadcast implementation used only to end the least loaded batch test
+    }
+
     private static class TestBroadcast implements Broadcast {
         // Broadcast implementation for testing
     }
@@ -0,0 +1,174 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ServiceExecutorTest {
+
+    private static final int TICKS = 50;
+    private static final int SENSORS = 4;
+    private static final int EVENTS_PER_TICK = 5;
+    private static final int WORKERS = 3;
+
+    @Test
+    public void testPoolNeverRunsTheCallbacksOfAServiceConcurrently() throws InterruptedException {
+        assertEquals(ExecutionMode.POOL, runSimulation(ExecutionMode.POOL));
+    }
+
+    @Test
+    public void testEveryModeRunsTheSimulationToTheEnd() throws InterruptedException {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            runSimulation(mode);
+        }
+    }
+
+    /**
+     * Runs a clock, sensors that send events on every tick and workers that handle
+     * them, until every event was handled and a stop broadcast ended all of them.
+     * @return the mode the micro-services actually ran in.
+     */
+    private static ExecutionMode runSimulation(ExecutionMode mode) throws InterruptedException {
+        ServiceExecutor executor = ServiceExecutor.create(mode);
+        AtomicInteger handled = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(WORKERS + SENSORS);
+        List<MicroService> services = new ArrayList<>();
+        for (int i = 0; i < WORKERS; i++) {
+            services.add(new Worker("Worker" + i, overlaps, started, handled));
+        }
+        for (int i = 0; i < SENSORS; i++) {
+            services.add(new Sensor("Sensor" + i, overlaps, started));
+        }
+        for (MicroService service : services) {
+            executor.execute(service);
+        }
+        // the clock starts once everybody subscribed, like in the runner
+        started.await();
+        Clock clock = new Clock(overlaps);
+        services.add(clock);
+        executor.execute(clock);
+
+        int expected = TICKS * SENSORS * EVENTS_PER_TICK;
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            while (handled.get() < expected) {
+                Thread.sleep(1);
+            }
+            MessageBusImpl.getInstance().sendBroadcast(new StopTestBroadcast());
+            for (MicroService service : services) {
+                executor.join(service);
+            }
+        }, mode.toString());
+        assertEquals(expected, handled.get(), mode.toString());
+        assertEquals(0, overlaps.get(), mode + ": the callbacks of a micro-service should never overlap.");
+        return executor.getMode();
+    }
+
+    /**
+     * A micro-service that counts it whenever one of its callbacks starts while
+     * another one is still running.
+     */
+    private abstract static class CheckedService extends MicroService {
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger overlaps;
+
+        CheckedService(String name, AtomicInteger overlaps) {
+            super(name);
+            this.overlaps = overlaps;
+        }
+
+        protected <M> Callback<M> exclusive(Callback<M> callback) {
+            return message -> {
+                if (running.incrementAndGet() != 1) {
+                    overlaps.incrementAndGet();
+                }
+                try {
+                    callback.call(message);
+                    // gives another thread the chance to run a callback of this one
+                    Thread.yield();
+                } finally {
+                    running.decrementAndGet();
+                }
+            };
+        }
+    }
+
+    private static class Clock extends CheckedService {
+        Clock(AtomicInteger overlaps) {
+            super("Clock", overlaps);
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeBroadcast(TickTestBroadcast.class, exclusive(tick -> {
+                if (tick.tick < TICKS) {
+                    sendBroadcast(new TickTestBroadcast(tick.tick + 1));
+                }
+            }));
+            subscribeBroadcast(StopTestBroadcast.class, exclusive(stop -> terminate()));
+            sendBroadcast(new TickTestBroadcast(1));
+        }
+    }
+
+    private static class Sensor extends CheckedService {
+        private final CountDownLatch started;
+
+        Sensor(String name, AtomicInteger overlaps, CountDownLatch started) {
+            super(name, overlaps);
+            this.started = started;
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeBroadcast(TickTestBroadcast.class, exclusive(tick -> {
+                List<WorkTestEvent> events = new ArrayList<>();
+                for (int i = 0; i < EVENTS_PER_TICK; i++) {
+                    events.add(new WorkTestEvent());
+                }
+                sendEventsNoReply(events);
+            }));
+            subscribeBroadcast(StopTestBroadcast.class, exclusive(stop -> terminate()));
+            started.countDown();
+        }
+    }
+
+    private static class Worker extends CheckedService {
+        private final CountDownLatch started;
+        private final AtomicInteger handled;
+
+        Worker(String name, AtomicInteger overlaps, CountDownLatch started, AtomicInteger handled) {
+            super(name, overlaps);
+            this.started = started;
+            this.handled = handled;
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeEvent(WorkTestEvent.class, exclusive(event -> handled.incrementAndGet()));
+            subscribeBroadcast(StopTestBroadcast.class, exclusive(stop -> terminate()));
+            started.countDown();
+        }
+    }
+
+    private static class TickTestBroadcast implements Broadcast {
+        private final int tick;
+
+        TickTestBroadcast(int tick) {
+            this.tick = tick;
+        }
+    }
+
+    private static class StopTestBroadcast implements Broadcast {
+        // Broadcast implementation used only to end the simulation
+    }
+
+    private static class WorkTestEvent implements Event<String> {
+        // Event implementation used only by the simulation workers
+    }
+}
@@ -0,0 +1,112 @@
+package bgu.spl.mics.application;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+import bgu.spl.mics.application.objects.DetectedObject;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CameraDataReaderTest {
+
+    // camera1 is a list of frames, camera2 a list of lists of frames
+    private static final String CAMERA_DATA = "{"
+        + "\"camera1\": [{\"time\": 2, \"detectedObjects\": [{\"id\": \"Wall_1\", \"description\": \"Wall\"}]},"
+        + " {\"time\": 4, \"detectedObjects\": [{\"id\": \"Chair_1\", \"description\": \"Chair\", \"extra\": [1]}, {\"id\": \"Wall_2\", \"description\": \"Wall\"}]}],"
+        + "\"camera2\": [[{\"time\": 1, \"detectedObjects\": []}, {\"time\": 3, \"detectedObjects\": [{\"id\": \"Door_1\", \"description\": \"Door\"}]}],"
+        + " [{\"time\": 5, \"detectedObjects\": [{\"id\": \"ERROR\", \"description\": \"Camera disconnected\"}]}]],"
+        + "\"camera3\": []}";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReadAllMatchesTheTreeParser() throws IOException {
+        // Act
+        Map<String, List<StampedDetectedObjects>> streamed = CameraDataReader.readAll(new StringReader(CAMERA_DATA));
+
+        // Assert
+        Map<String, List<String>> expected = parseWithTree(CAMERA_DATA);
+        assertEquals(expected.keySet(), streamed.keySet());
+        for (String cameraKey : expected.keySet()) {
+            assertEquals(expected.get(cameraKey), describe(streamed.get(cameraKey)), cameraKey);
+        }
+        assertEquals(5, streamed.get("camera2").get(2).getTime(), "A list of lists is flattened in order");
+    }
+
+    @Test
+    void testOpenReadsTheFramesOfOneCamera() throws IOException {
+        // Arrange
+        Path file = directory.resolve("camera_data.json");
+        Files.write(file, CAMERA_DATA.getBytes(StandardCharsets.UTF_8));
+        Map<String, List<String>> expected = parseWithTree(CAMERA_DATA);
+
+        for (String cameraKey : new String[] {"camera1", "camera2", "camera3", "camera9"}) {
+            // Act
+            List<StampedDetectedObjects> frames = new ArrayList<>();
+            try (CameraDataReader reader = CameraDataReader.open(file.toString(), cameraKey)) {
+                while (reader.hasNext()) {
+                    frames.add(reader.next());
+                }
+                assertFalse(reader.hasNext(), "A reader stays over once its frames are over");
+            }
+
+            // Assert
+            assertEquals(expected.getOrDefault(cameraKey, List.of()), describe(frames), cameraKey);
+        }
+    }
+
+    /**
+     * Parses the camera data like the runner did before the streaming reader, through a
+     * tree of the whole file and Gson for every frame.
+     */
+    private static Map<String, List<String>> parseWithTree(String json) {
+        Gson gson = new Gson();
+        Map<String, List<String>> cameraData = new HashMap<>();
+        for (Map.Entry<String, JsonElement> entry : JsonParser.parseString(json).getAsJsonObject().entrySet()) {
+            JsonArray frames = entry.getValue().getAsJsonArray();
+            List<StampedDetectedObjects> parsed = new ArrayList<>();
+            if (frames.size() > 0 && frames.get(0).isJsonArray()) {
+                for (JsonElement inner : frames) {
+                    for (JsonElement frame : inner.getAsJsonArray()) {
+                        parsed.add(gson.fromJson(frame, StampedDetectedObjects.class));
+                    }
+                }
+            } else {
+                for (JsonElement frame : frames) {
+                    parsed.add(gson.fromJson(frame, StampedDetectedObjects.class));
+                }
+            }
+            cameraData.put(entry.getKey(), describe(parsed));
+        }
+        return cameraData;
+    }
+
+    private static List<String> describe(List<StampedDetectedObjects> frames) {
+        List<String> described = new ArrayList<>();
+        for (StampedDetectedObjects frame : frames) {
+            StringBuilder builder = new StringBuilder().append(frame.getTime());
+            for (DetectedObject object : frame.getDetectedObjects()) {
+                builder.append(' ').append(object.getId()).append('/').append(object.getDescription());
+            }
+            described.add(builder.toString());
+        }
+        return described;
+    }
+}
@@ -99,4 +99,45 @@ class CameraTest {
         assertEquals(500, objectsList.get(0).getTime(), "First detected object's time should be 500");
         assertEquals(600, objectsList.get(1).getTime(), "Second detected object's time should be 600");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testTakeDueHandsOutFramesOnce() {
+        // Arrange
+        Camera delayed = new Camera(2, 2, "CAM456");
+        StampedDetectedObjects first = new StampedDetectedObjects(1);
+        StampedDetectedObjects second = new StampedDetectedObjects(3);
+        StampedDetectedObjects sameTime = new StampedDetectedObjects(3);
+        StampedDetectedObjects late = new StampedDetectedObjects(7);
+        delayed.addDetectedObject(second);
+        delayed.addDetectedObject(first);
+        delayed.addDetectedObject(sameTime);
+        delayed.addDetectedObject(late);
+
+        // Act & Assert
+        assertTrue(delayed.takeDue(2).isEmpty(), "Nothing is due before time + frequency");
+        assertEquals(List.of(first), delayed.takeDue(3), "A frame is due frequency ticks after its time");
+        assertEquals(List.of(second, sameTime), delayed.takeDue(5), "Frames of the same time are due together, in order");
+        assertTrue(delayed.takeDue(5).isEmpty(), "A frame is handed out once");
+        assertEquals(List.of(late), delayed.takeDue(9));
+        assertEquals(4, delayed.getListOfDetectedObjects().size(), "Handing out frames keeps the list");
+    }
+
+    @Test
+    void testFeedIsReadUpToTheFirstFrameNotDue() {
+        // Arrange
+        Camera fed = new Camera(3, 1, "CAM789");
+        StampedDetectedObjects first = new StampedDetectedObjects(1);
+        StampedDetectedObjects second = new StampedDetectedObjects(2);
+        StampedDetectedObjects last = new StampedDetectedObjects(5);
+        fed.setFeed(List.of(first, second, last).iterator());
+
+        // Act & Assert
+        assertTrue(fed.hasRemaining());
+        assertEquals(List.of(first), fed.takeDue(2));
+        assertEquals(List.of(second), fed.getListOfDetectedObjects(), "Only the next frame not due is read");
+        assertEquals(List.of(second), fed.takeDue(3));
+        assertEquals(List.of(last), fed.takeDue(6));
+        assertFalse(fed.hasRemaining(), "Every frame was handed out");
+        assertTrue(fed.getListOfDetectedObjects().isEmpty(), "Handed out frames are forgotten");
+    }
+}
@@ -0,0 +1,33 @@
+package bgu.spl.mics.application.objects;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CloudPointsAtTimeTest {
+
+    @Test
+    void testRecordsAreIndexedById() {
+        // Arrange
+        StampedCloudPoints wall = new StampedCloudPoints("Wall_1", 2);
+        StampedCloudPoints chair = new StampedCloudPoints("Chair_1", 2);
+        StampedCloudPoints wallAgain = new StampedCloudPoints("Wall_1", 2);
+
+        // Act
+        CloudPointsAtTime built = CloudPointsAtTime.of(List.of(wall, chair, wallAgain));
+        CloudPointsAtTime added = CloudPointsAtTime.EMPTY.with(wall).with(chair).with(wallAgain);
+
+        // Assert
+        for (CloudPointsAtTime index : List.of(built, added)) {
+            assertEquals(List.of(wall, wallAgain), index.get("Wall_1"), "Every record of an id, in order");
+            assertEquals(List.of(chair), index.get("Chair_1"));
+            assertTrue(index.get("Door_1").isEmpty());
+            assertEquals(List.of(wall, chair, wallAgain), index.getAll());
+            assertFalse(index.hasError());
+        }
+        assertTrue(added.with(new StampedCloudPoints("ERROR", 2)).hasError());
+        assertFalse(added.hasError(), "Adding a record does not change the index it was added to");
+    }
+}
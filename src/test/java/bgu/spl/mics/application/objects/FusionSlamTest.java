@@ -17,6 +17,7 @@ class FusionSlamTest {
         // Reset the singleton instance for testing purposes
         fusionSlam = FusionSlam.getInstance();
         fusionSlam.cleanPoses();
+        fusionSlam.cleanLandmarks();
     }
 
     @Test
@@ -124,6 +125,61 @@ class FusionSlamTest {
         assertTrue(coordinates.contains(point2), "Coordinates should contain point2");
     }
 
+    @Test
+    void testLandmarkSharesPointCloud() {
+        // Arrange
+        PointCloud points = new PointCloud.Builder().add(1.5, 2.5).add(4.5, 5.5).build();
+        TrackedObject tracked = new TrackedObject("LM1", "Test landmark", 1, points);
+
+        // Act
+        LandMark landmark = new LandMark(tracked.getId(), tracked.getDescription(), tracked.getPoints());
+
+        // Assert
+        assertSame(points, landmark.getPoints(), "The point cloud should be shared, not copied");
+        assertEquals(List.of(new CloudPoint(1.5, 2.5), new CloudPoint(4.5, 5.5)), landmark.getCoordinateList());
+    }
+
+    @Test
+    void testLandmarksWithinRadiusFollowUpdates() {
+        // Arrange
+        LandMark near = new LandMark("LM1", "Near", new PointCloud.Builder().add(0.5, 0.5).add(1.5, 0.5).build());
+        LandMark far = new LandMark("LM2", "Far", new PointCloud.Builder().add(10.0, 10.0).build());
+        LandMark nearer = new LandMark("LM3", "Nearer", new PointCloud.Builder().add(0.2, 0.1).build());
+        fusionSlam.addLandmark(near);
+        fusionSlam.addLandmark(far);
+        fusionSlam.addLandmark(nearer);
+
+        // Act & Assert
+        assertEquals(List.of(nearer, near), fusionSlam.getLandmarksWithin(0, 0, 1.5), "Nearest first, by centroid");
+        assertTrue(fusionSlam.getLandmarksWithin(5, 5, 1).isEmpty());
+        assertEquals(List.of(nearer, near, far), fusionSlam.getLandmarksWithin(0, 0, 1000));
+
+        fusionSlam.updateLandmark(far, new PointCloud.Builder().add(5.0, 5.5).build());
+        assertEquals(List.of(far), fusionSlam.getLandmarksWithin(5, 5, 1), "An update moves the landmark in the grid");
+        assertTrue(fusionSlam.getLandmarksWithin(10, 10, 1).isEmpty());
+    }
+
+    @Test
+    void testMergeOrInsertByLandmarkId() {
+        // Arrange
+        PointCloud first = new PointCloud.Builder().add(1.0, 1.0).build();
+        PointCloud second = new PointCloud.Builder().add(3.0, 3.0).build();
+
+        // Act
+        boolean inserted = fusionSlam.mergeOrInsert("LM1", "Wall", first, (existing, observed) -> observed);
+        boolean insertedAgain = fusionSlam.mergeOrInsert("LM1", "Wall", second, (existing, observed) -> observed);
+        fusionSlam.mergeOrInsert("LM2", "Door", new PointCloud.Builder().add(8.0, 8.0).build(), (existing, observed) -> observed);
+
+        // Assert
+        assertTrue(inserted, "The first observation of an id adds a landmark");
+        assertFalse(insertedAgain, "A later observation is merged into it");
+        LandMark landmark = fusionSlam.getLandmark("LM1");
+        assertSame(second, landmark.getPoints());
+        assertEquals(List.of(landmark, fusionSlam.getLandmark("LM2")), fusionSlam.getLandmarks(), "Landmarks keep the order they were added in");
+        assertEquals(List.of(landmark), fusionSlam.getLandmarksWithin(3, 3, 0.5), "A merge moves the landmark in the grid");
+        assertNull(fusionSlam.getLandmark("LM3"));
+    }
+
     @Test
     void testCloudPointMutability() {
         // Arrange
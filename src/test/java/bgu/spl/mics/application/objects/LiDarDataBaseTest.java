@@ -0,0 +1,190 @@
+package bgu.spl.mics.application.objects;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+
+import bgu.spl.mics.application.LidarDataReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LiDarDataBaseTest {
+
+    private LiDarDataBase dataBase;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setUp() {
+        dataBase = LiDarDataBase.getInstance();
+        dataBase.clearCloudPoints();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataBase.clearCloudPoints();
+    }
+
+    @Test
+    void testSourceIsReadAsTheClockAdvances() {
+        // Arrange
+        List<StampedCloudPoints> records = List.of(
+            new StampedCloudPoints("Wall_1", 1),
+            new StampedCloudPoints("Chair_1", 1),
+            new StampedCloudPoints("Wall_1", 2),
+            new StampedCloudPoints("Wall_1", 4),
+            new StampedCloudPoints("Door_1", 6));
+        CountingIterator source = new CountingIterator(records.iterator());
+
+        // Act
+        dataBase.setSource(source, 2);
+
+        // Assert
+        assertEquals(0, source.read, "Nothing is read before it is asked for");
+        assertEquals(2, dataBase.getCloudPointsAt(1).getAll().size());
+        assertEquals(3, source.read, "Read up to the first record after the time asked for");
+        assertEquals(1, dataBase.getCloudPointsAt(2).get("Wall_1").size());
+        assertTrue(dataBase.getCloudPointsAt(3).getAll().isEmpty());
+        assertEquals(4, source.read);
+        assertEquals(1, dataBase.getCloudPointsAt(4).getAll().size());
+        assertEquals(5, source.read);
+        assertEquals(1, dataBase.getCloudPointsAt(6).getAll().size());
+        assertTrue(dataBase.getCloudPointsAt(8).getAll().isEmpty(), "The source is over");
+        assertFalse(source.hasNext());
+    }
+
+    @Test
+    void testTimesBeyondTheRetainedTicksAreForgotten() {
+        // Arrange
+        List<StampedCloudPoints> records = List.of(
+            new StampedCloudPoints("Wall_1", 1),
+            new StampedCloudPoints("Wall_1", 2),
+            new StampedCloudPoints("Wall_1", 3),
+            new StampedCloudPoints("Wall_1", 5));
+        dataBase.setSource(records.iterator(), 2);
+        dataBase.getCloudPointsAt(3);
+
+        // Act
+        dataBase.advanceTo(4);
+
+        // Assert
+        assertTrue(dataBase.getCloudPointsAt(1).getAll().isEmpty(), "Time 1 is more than 2 ticks behind tick 4");
+        assertEquals(1, dataBase.getCloudPointsAt(2).getAll().size());
+        assertEquals(1, dataBase.getCloudPointsAt(3).getAll().size());
+
+        dataBase.advanceTo(6);
+        assertTrue(dataBase.getCloudPointsAt(3).getAll().isEmpty());
+        assertEquals(1, dataBase.getCloudPointsAt(5).getAll().size());
+    }
+
+    @Test
+    void testUnsortedSourceFailsTheRead() {
+        // Arrange
+        List<StampedCloudPoints> records = List.of(
+            new StampedCloudPoints("Wall_1", 1),
+            new StampedCloudPoints("Wall_1", 3),
+            new StampedCloudPoints("Chair_1", 2),
+            new StampedCloudPoints("Wall_1", 5));
+        dataBase.setSource(records.iterator(), 2);
+
+        // Act & Assert
+        assertEquals(1, dataBase.getCloudPointsAt(1).getAll().size());
+        IllegalStateException failure = assertThrows(IllegalStateException.class, () -> dataBase.getCloudPointsAt(3));
+        assertTrue(failure.getMessage().contains("not sorted"), failure.getMessage());
+        assertThrows(IllegalStateException.class, () -> dataBase.getCloudPointsAt(5), "The source stays failed");
+    }
+
+    @Test
+    void testAddedAndDecodedRecordsAreMergedOnce() throws IOException {
+        // Arrange
+        Path file = directory.resolve("lidar_data.pcf");
+        PointCloudFile.write(List.of(new StampedCloudPoints("Wall_1", 2)).iterator(), file);
+        dataBase.addCloudPoints(new StampedCloudPoints("Chair_1", 2));
+        dataBase.setSource(PointCloudFile.open(file), 2);
+
+        // Act
+        CloudPointsAtTime first = dataBase.getCloudPointsAt(2);
+
+        // Assert
+        assertEquals(2, first.getAll().size());
+        assertSame(first, dataBase.getCloudPointsAt(2), "The merged index is kept");
+        dataBase.addCloudPoints(new StampedCloudPoints("Door_1", 2));
+        CloudPointsAtTime changed = dataBase.getCloudPointsAt(2);
+        assertEquals(3, changed.getAll().size(), "A record added to the time is merged too");
+        assertSame(changed, dataBase.getCloudPointsAt(2));
+    }
+
+    @Test
+    void testEarlierTicksForgetNothing() {
+        // Arrange
+        List<StampedCloudPoints> records = List.of(
+            new StampedCloudPoints("Wall_1", 1),
+            new StampedCloudPoints("Wall_1", 3),
+            new StampedCloudPoints("Wall_1", 5));
+        dataBase.setSource(records.iterator(), 1);
+        dataBase.getCloudPointsAt(3);
+
+        // Act: LiDARs that are behind pass the ticks again
+        dataBase.advanceTo(4);
+        dataBase.advanceTo(2);
+        dataBase.advanceTo(4);
+
+        // Assert
+        assertEquals(1, dataBase.getCloudPointsAt(3).getAll().size());
+        assertTrue(dataBase.getCloudPointsAt(1).getAll().isEmpty());
+        dataBase.advanceTo(5);
+        assertTrue(dataBase.getCloudPointsAt(3).getAll().isEmpty());
+    }
+
+    @Test
+    void testReaderStreamsTheLidarFile() throws IOException {
+        // Arrange
+        Path file = directory.resolve("lidar_data.json");
+        Files.write(file, ("[{\"time\": 2, \"id\": \"Wall_1\", \"cloudPoints\": [[0.5, 1.5, 0.1], [2.0, -3.0, 0.2]]},"
+            + " {\"time\": 2, \"id\": \"ERROR\", \"cloudPoints\": []},"
+            + " {\"time\": 4, \"id\": \"Chair_1\", \"extra\": {\"a\": 1}, \"cloudPoints\": [[1.0, 2.0, 0.0]]}]").getBytes(StandardCharsets.UTF_8));
+
+        // Act
+        try (LidarDataReader reader = LidarDataReader.open(file.toString())) {
+            dataBase.setSource(reader, 2);
+
+            // Assert
+            CloudPointsAtTime atTwo = dataBase.getCloudPointsAt(2);
+            assertTrue(atTwo.hasError());
+            assertEquals(List.of(new CloudPoint(0.5, 1.5), new CloudPoint(2.0, -3.0)), atTwo.get("Wall_1").get(0).getCoordinates(), "z is dropped");
+            StampedCloudPoints chair = dataBase.getCloudPointsAt(4).get("Chair_1").get(0);
+            assertEquals(4, chair.getTime());
+            assertEquals(List.of(new CloudPoint(1.0, 2.0)), chair.getCoordinates());
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    private static class CountingIterator implements Iterator<StampedCloudPoints> {
+        private final Iterator<StampedCloudPoints> records;
+        private int read = 0;
+
+        CountingIterator(Iterator<StampedCloudPoints> records) {
+            this.records = records;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return records.hasNext();
+        }
+
+        @Override
+        public StampedCloudPoints next() {
+            read++;
+            return records.next();
+        }
+    }
+}
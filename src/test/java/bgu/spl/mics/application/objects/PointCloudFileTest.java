@@ -0,0 +1,74 @@
+package bgu.spl.mics.application.objects;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PointCloudFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testWrittenRecordsAreReadByTime() throws IOException {
+        // Arrange
+        Path file = directory.resolve("lidar_data.pcf");
+        List<StampedCloudPoints> records = List.of(
+            new StampedCloudPoints("Wall_1", 4, new PointCloud.Builder().add(0.5, 1.5).add(2.25, -3.0).build()),
+            new StampedCloudPoints("Chair_1", 2, new PointCloud.Builder().add(1.0, 2.0).build()),
+            new StampedCloudPoints("Wall_1", 2, PointCloud.EMPTY));
+
+        // Act
+        PointCloudFile.write(records.iterator(), file);
+        PointCloudFile mapped = PointCloudFile.open(file);
+
+        // Assert
+        assertTrue(PointCloudFile.isPointCloudFile(file));
+        assertEquals(3, mapped.getRecordCount());
+        List<StampedCloudPoints> atTwo = mapped.read(2);
+        assertEquals(2, atTwo.size());
+        assertEquals("Chair_1", atTwo.get(0).getId(), "Records of a time keep the order of the recording");
+        assertEquals("Wall_1", atTwo.get(1).getId());
+        assertEquals(0, atTwo.get(1).getPoints().size());
+        List<StampedCloudPoints> atFour = mapped.read(4);
+        assertEquals(1, atFour.size());
+        assertEquals(4, atFour.get(0).getTime());
+        assertEquals(List.of(new CloudPoint(0.5, 1.5), new CloudPoint(2.25, -3.0)), atFour.get(0).getCoordinates());
+        assertTrue(mapped.read(3).isEmpty(), "A time without records has none");
+    }
+
+    @Test
+    void testRecordsAreReadById() throws IOException {
+        // Arrange
+        Path file = directory.resolve("lidar_data.pcf");
+        List<StampedCloudPoints> records = List.of(
+            new StampedCloudPoints("Wall_1", 2, new PointCloud.Builder().add(0.5, 1.5).build()),
+            new StampedCloudPoints("Chair_1", 2, new PointCloud.Builder().add(1.0, 2.0).build()),
+            new StampedCloudPoints("Wall_1", 2, new PointCloud.Builder().add(3.0, 4.0).build()),
+            new StampedCloudPoints("ERROR", 3, PointCloud.EMPTY));
+
+        // Act
+        PointCloudFile.write(records.iterator(), file);
+        PointCloudFile mapped = PointCloudFile.open(file);
+        CloudPointsAtTime atTwo = mapped.readAt(2);
+
+        // Assert
+        List<StampedCloudPoints> walls = mapped.read(2, "Wall_1");
+        assertEquals(2, walls.size(), "Every record of an id, in the order of the recording");
+        assertEquals(List.of(new CloudPoint(0.5, 1.5)), walls.get(0).getCoordinates());
+        assertEquals(List.of(new CloudPoint(3.0, 4.0)), walls.get(1).getCoordinates());
+        assertEquals(1, mapped.read(2, "Chair_1").size());
+        assertTrue(mapped.read(2, "Door_1").isEmpty());
+        assertTrue(mapped.read(4, "Wall_1").isEmpty());
+        assertEquals(List.of("Wall_1", "Chair_1", "Wall_1"), atTwo.getAll().stream().map(StampedCloudPoints::getId).collect(Collectors.toList()));
+        assertEquals(2, atTwo.get("Wall_1").size());
+        assertFalse(atTwo.hasError());
+        assertTrue(mapped.readAt(3).hasError());
+    }
+}
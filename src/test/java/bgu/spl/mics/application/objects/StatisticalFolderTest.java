@@ -0,0 +1,69 @@
+package bgu.spl.mics.application.objects;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatisticalFolderTest {
+
+    private StatisticalFolder folder;
+
+    @BeforeEach
+    void setUp() {
+        // Reset the singleton counters for testing purposes
+        folder = StatisticalFolder.getInstance();
+        folder.cleanTickLateness();
+    }
+
+    @Test
+    void testNoTimedTicks() {
+        assertEquals(0, folder.getTimedTicks());
+        assertEquals(0, folder.getOverrunTicks());
+        assertEquals(0, folder.getMeanTickLatenessNanos(), "No ticks should not divide by zero");
+        assertEquals(0, folder.getMaxTickLatenessNanos());
+    }
+
+    @Test
+    void testRecordTickLateness() {
+        // Act
+        folder.recordTickLateness(100, false);
+        folder.recordTickLateness(400, true);
+        folder.recordTickLateness(0, false);
+        folder.recordTickLateness(301, true);
+
+        // Assert
+        assertEquals(4, folder.getTimedTicks());
+        assertEquals(2, folder.getOverrunTicks(), "Only the overrun ticks should count as overruns");
+        assertEquals(200, folder.getMeanTickLatenessNanos(), "The mean is rounded down");
+        assertEquals(400, folder.getMaxTickLatenessNanos());
+    }
+
+    @Test
+    void testRecordTickLatenessFromManyThreads() throws InterruptedException {
+        // Arrange
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            long lateness = (i + 1) * 1000L;
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    folder.recordTickLateness(lateness, j % 2 == 0);
+                }
+            });
+        }
+
+        // Act
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Assert
+        assertEquals(4000, folder.getTimedTicks());
+        assertEquals(2000, folder.getOverrunTicks());
+        assertEquals(2500, folder.getMeanTickLatenessNanos());
+        assertEquals(4000, folder.getMaxTickLatenessNanos());
+    }
+}
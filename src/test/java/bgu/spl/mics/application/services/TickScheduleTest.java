@@ -0,0 +1,97 @@
+package bgu.spl.mics.application.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TickScheduleTest {
+
+    private static final long TICK = 10;
+
+    @Test
+    void testOverrunWhenLateOrWhileTheServicesAreBusy() {
+        // Arrange
+        TickSchedule schedule = new TickSchedule(TICK, TimeService.CatchUpPolicy.BURST, 0);
+
+        // Act & Assert
+        assertEquals(TICK, schedule.nextDeadline());
+        assertFalse(schedule.isOverrun(5, false), "Arriving before the deadline is on time");
+        assertFalse(schedule.isOverrun(TICK, false), "Arriving on the deadline is on time");
+        assertTrue(schedule.isOverrun(TICK + 1, false), "Arriving after the deadline is an overrun");
+        assertTrue(schedule.isOverrun(5, true), "Busy services at the deadline are an overrun");
+    }
+
+    @Test
+    void testOnlySkipAndStretchWaitForTheServices() {
+        for (TimeService.CatchUpPolicy policy : TimeService.CatchUpPolicy.values()) {
+            TickSchedule schedule = new TickSchedule(TICK, policy, 0);
+            assertFalse(schedule.waitsForServices(false), policy.toString());
+            assertEquals(policy != TimeService.CatchUpPolicy.BURST, schedule.waitsForServices(true), policy.toString());
+        }
+    }
+
+    @Test
+    void testEveryPolicyKeepsTheScheduleWithoutOverruns() {
+        for (TimeService.CatchUpPolicy policy : TimeService.CatchUpPolicy.values()) {
+            TickSchedule schedule = new TickSchedule(TICK, policy, 0);
+            assertEquals(2, schedule.advance(12, false), policy.toString());
+            assertEquals(20, schedule.nextDeadline(), policy.toString());
+            assertEquals(0, schedule.advance(20, false), policy.toString());
+            assertEquals(30, schedule.nextDeadline(), policy.toString());
+        }
+    }
+
+    @Test
+    void testBurstKeepsTheScheduleAfterAnOverrun() {
+        // Arrange
+        TickSchedule schedule = new TickSchedule(TICK, TimeService.CatchUpPolicy.BURST, 0);
+
+        // Act & Assert: the services held the tick due at 10 until 35
+        assertEquals(25, schedule.advance(35, true));
+        assertEquals(20, schedule.nextDeadline());
+        // the missed ticks are due right away
+        assertTrue(schedule.isOverrun(35, false));
+        assertEquals(15, schedule.advance(35, true));
+        assertEquals(30, schedule.nextDeadline());
+        assertEquals(5, schedule.advance(35, true));
+        assertEquals(40, schedule.nextDeadline());
+        assertFalse(schedule.isOverrun(35, false), "Caught up with the schedule");
+    }
+
+    @Test
+    void testSkipDropsTheMissedDeadlines() {
+        // Arrange
+        TickSchedule schedule = new TickSchedule(TICK, TimeService.CatchUpPolicy.SKIP, 0);
+
+        // Act & Assert: the services held the tick due at 10 until 35
+        assertEquals(25, schedule.advance(35, true));
+        assertEquals(40, schedule.nextDeadline(), "The deadlines at 20 and 30 are dropped");
+        // an overrun shorter than a tick drops no deadline
+        assertEquals(3, schedule.advance(43, true));
+        assertEquals(50, schedule.nextDeadline());
+        // an overrun of exactly a tick drops the deadline it reached
+        assertEquals(10, schedule.advance(60, true));
+        assertEquals(70, schedule.nextDeadline());
+    }
+
+    @Test
+    void testStretchMovesTheScheduleByTheOverrun() {
+        // Arrange
+        TickSchedule schedule = new TickSchedule(TICK, TimeService.CatchUpPolicy.STRETCH, 0);
+
+        // Act & Assert: the services held the tick due at 10 until 35
+        assertEquals(25, schedule.advance(35, true));
+        assertEquals(45, schedule.nextDeadline(), "The next tick is due a tick after the late one");
+        assertEquals(0, schedule.advance(45, false));
+        assertEquals(55, schedule.nextDeadline());
+    }
+
+    @Test
+    void testZeroTickLengthNeverDividesByZero() {
+        for (TimeService.CatchUpPolicy policy : TimeService.CatchUpPolicy.values()) {
+            TickSchedule schedule = new TickSchedule(0, policy, 100);
+            assertEquals(5, schedule.advance(105, true), policy.toString());
+            assertEquals(policy == TimeService.CatchUpPolicy.BURST ? 100 : 105, schedule.nextDeadline(), policy.toString());
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package bgu.spl.mics.application.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import bgu.spl.mics.Event;
+import bgu.spl.mics.ExecutionMode;
+import bgu.spl.mics.MicroService;
+import bgu.spl.mics.ServiceExecutor;
+import bgu.spl.mics.application.messages.TerminatedBroadcast;
+import bgu.spl.mics.application.messages.TickBroadcast;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeServiceTest {
+
+    private static final int TICKS = 20;
+    private static final int EVENTS_PER_TICK = 3;
+
+    @Test
+    void testVirtualTimeSendsATickOnceThePreviousOneIsHandled() throws InterruptedException {
+        // Arrange
+        ServiceExecutor executor = ServiceExecutor.create(ExecutionMode.PLATFORM);
+        AtomicInteger handled = new AtomicInteger();
+        AtomicInteger early = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(2);
+        Worker worker = new Worker(handled, started);
+        MicroService sensor = new MicroService("Sensor") {
+            private int ticks = 0;
+
+            @Override
+            protected void initialize() {
+                subscribeBroadcast(TickBroadcast.class, tick -> {
+                    // the work every earlier tick caused is done by now
+                    if (handled.get() != ticks * EVENTS_PER_TICK) {
+                        early.incrementAndGet();
+                    }
+                    ticks++;
+                    List<WorkEvent> events = new ArrayList<>();
+                    for (int i = 0; i < EVENTS_PER_TICK; i++) {
+                        events.add(new WorkEvent());
+                    }
+                    sendEventsNoReply(events);
+                });
+                subscribeBroadcast(TerminatedBroadcast.class, broadcast -> terminate());
+                started.countDown();
+            }
+        };
+        executor.execute(worker);
+        executor.execute(sensor);
+        started.await();
+        // a tick of a second would take 20 seconds in real time
+        TimeService timeService = new TimeService(1, TimeUnit.SECONDS, TICKS, TimeService.ClockMode.VIRTUAL_TIME, TimeService.CatchUpPolicy.BURST);
+
+        // Act
+        executor.execute(timeService);
+
+        // Assert
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            executor.join(timeService);
+            executor.join(sensor);
+            executor.join(worker);
+        });
+        assertEquals(0, early.get(), "A tick should only be sent once the previous one was handled");
+        assertEquals((TICKS + 1) * EVENTS_PER_TICK, handled.get(), "The work of the last tick is done before the end");
+    }
+
+    @Test
+    void testRealTimeDoesNotWaitForTheServices() throws InterruptedException {
+        // Arrange
+        ServiceExecutor executor = ServiceExecutor.create(ExecutionMode.PLATFORM);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch clockDone = new CountDownLatch(1);
+        AtomicInteger ticks = new AtomicInteger();
+        MicroService slow = new MicroService("SlowSensor") {
+            @Override
+            protected void initialize() {
+                subscribeBroadcast(TickBroadcast.class, tick -> {
+                    ticks.incrementAndGet();
+                    try {
+                        // busy with the first tick until the clock is done
+                        clockDone.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                subscribeBroadcast(TerminatedBroadcast.class, broadcast -> terminate());
+                started.countDown();
+            }
+        };
+        executor.execute(slow);
+        started.await();
+        int overruns = StatisticalFolder.getInstance().getOverrunTicks();
+        TimeService timeService = new TimeService(2, TimeUnit.MILLISECONDS, TICKS, TimeService.ClockMode.REAL_TIME, TimeService.CatchUpPolicy.BURST);
+
+        // Act
+        executor.execute(timeService);
+
+        // Assert
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            executor.join(timeService);
+            clockDone.countDown();
+            executor.join(slow);
+        });
+        assertEquals(TICKS + 1, ticks.get(), "The slow service should still get every tick");
+        assertTrue(StatisticalFolder.getInstance().getOverrunTicks() - overruns >= TICKS - 1,
+            "Every tick after the first one is due while the service is busy");
+    }
+
+    private static class Worker extends MicroService {
+        private final AtomicInteger handled;
+        private final CountDownLatch started;
+
+        Worker(AtomicInteger handled, CountDownLatch started) {
+            super("Worker");
+            this.handled = handled;
+            this.started = started;
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeEvent(WorkEvent.class, event -> {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                handled.incrementAndGet();
+            });
+            subscribeBroadcast(TerminatedBroadcast.class, broadcast -> terminate());
+            started.countDown();
+        }
+    }
+
+    private static class WorkEvent implements Event<String> {
+        // Event implementation used only by the virtual time test
+    }
+}
@@ -0,0 +1,136 @@
+package bgu.spl.mics.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import bgu.spl.mics.Event;
+import bgu.spl.mics.Future;
+import bgu.spl.mics.Message;
+import bgu.spl.mics.MessageBusImpl;
+import bgu.spl.mics.MicroService;
+
+/**
+ * Events sent per microsecond by cameras that send a frame burst at a time, either
+ * one {@code sendEvent} per event or a single {@code sendEvents} for the burst.
+ * LiDAR workers drain and complete the events on their own threads.
+ * <p>
+ * Run with: {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.openjdk.jmh.Main BatchSendBenchmark"}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(2)
+@State(Scope.Benchmark)
+public class BatchSendBenchmark {
+    private static final int BURST = 32;
+
+    @Param({ "4" })
+    private int workers;
+
+    private MessageBusImpl bus;
+    private final List<MicroService> services = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+
+        bus = MessageBusImpl.getInstance();
+        for (int i = 0; i < workers; i++) {
+            MicroService worker = new IdleService("LiDarService-" + i);
+            bus.register(worker);
+            bus.subscribeEvent(FrameEvent.class, worker);
+            Thread thread = new Thread(() -> handle(worker), worker.getName());
+            thread.setDaemon(true);
+            thread.start();
+            services.add(worker);
+            threads.add(thread);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (MicroService service : services) {
+            bus.unregister(service);
+        }
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void perMessage(Blackhole blackhole) {
+        for (int i = 0; i < BURST; i++) {
+            blackhole.consume(bus.sendEvent(new FrameEvent()));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public List<Future<Integer>> batched() {
+        List<FrameEvent> burst = new ArrayList<>(BURST);
+        for (int i = 0; i < BURST; i++) {
+            burst.add(new FrameEvent());
+        }
+        return bus.sendEvents(burst);
+    }
+
+    private void handle(MicroService worker) {
+        List<Message> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.clear();
+                bus.awaitMessages(worker, batch);
+                for (Message message : batch) {
+                    bus.complete((FrameEvent) message, 1);
+                }
+            }
+        } catch (InterruptedException | IllegalStateException ex) {
+            // benchmark is over
+        }
+    }
+
+    public static class FrameEvent implements Event<Integer> {
+    }
+
+    private static class IdleService extends MicroService {
+        IdleService(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void initialize() {
+        }
+    }
+}
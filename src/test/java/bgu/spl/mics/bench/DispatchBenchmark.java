@@ -0,0 +1,123 @@
+package bgu.spl.mics.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.MicroService;
+
+/**
+ * Time per message of the {@link MicroService#run()} event loop: a micro-service that
+ * handles a few broadcast types sends itself a burst of them during its initialization,
+ * then handles the burst and terminates on the calling thread.
+ * <p>
+ * Run with: {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.openjdk.jmh.Main DispatchBenchmark"}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DispatchBenchmark {
+    private static final int BURST = 1024;
+
+    @Param({ "1", "4" })
+    private int types;
+
+    private final List<Broadcast> burst = new ArrayList<>(BURST);
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+
+        for (int i = 0; i < BURST; i++) {
+            switch (i % types) {
+                case 0:
+                    burst.add(new First());
+                    break;
+                case 1:
+                    burst.add(new Second());
+                    break;
+                case 2:
+                    burst.add(new Third());
+                    break;
+                default:
+                    burst.add(new Fourth());
+                    break;
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public int run() {
+        BurstService service = new BurstService();
+        service.run();
+        return service.handled;
+    }
+
+    public static class First implements Broadcast {
+    }
+
+    public static class Second implements Broadcast {
+    }
+
+    public static class Third implements Broadcast {
+    }
+
+    public static class Fourth implements Broadcast {
+    }
+
+    public static class Stop implements Broadcast {
+    }
+
+    private class BurstService extends MicroService {
+        private int handled = 0;
+
+        BurstService() {
+            super("BurstService");
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeBroadcast(First.class, b -> handled++);
+            subscribeBroadcast(Second.class, b -> handled++);
+            subscribeBroadcast(Third.class, b -> handled++);
+            subscribeBroadcast(Fourth.class, b -> handled++);
+            subscribeBroadcast(Stop.class, b -> terminate());
+            sendBroadcasts(burst);
+            sendBroadcast(new Stop());
+        }
+    }
+}
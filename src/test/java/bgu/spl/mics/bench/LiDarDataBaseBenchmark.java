@@ -0,0 +1,115 @@
+package bgu.spl.mics.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bgu.spl.mics.application.objects.LiDarDataBase;
+import bgu.spl.mics.application.objects.PointCloud;
+import bgu.spl.mics.application.objects.StampedCloudPoints;
+
+/**
+ * Lookups per second of a number of LiDAR workers that look up the cloud points of
+ * detected objects in the {@link LiDarDataBase} at the same time, with the database
+ * frozen after loading or left open for appends.
+ * <p>
+ * Every invocation splits {@code LOOKUPS} lookups between the workers.
+ * <p>
+ * Run with: {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.openjdk.jmh.Main LiDarDataBaseBenchmark"}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LiDarDataBaseBenchmark {
+    private static final int TIMES = 256;
+    private static final int OBJECTS = 16;
+    private static final int LOOKUPS = 1 << 16;
+
+    @Param({ "1", "4", "16" })
+    private int workers;
+
+    @Param({ "true", "false" })
+    private boolean frozen;
+
+    private final String[] ids = new String[OBJECTS];
+    private ExecutorService pool;
+    private List<Callable<Integer>> tasks;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LiDarDataBase dataBase = LiDarDataBase.getInstance();
+        dataBase.clearCloudPoints();
+        PointCloud.Builder points = new PointCloud.Builder();
+        for (int i = 0; i < 8; i++) {
+            points.add(i, -i);
+        }
+        PointCloud cloud = points.build();
+        for (int object = 0; object < OBJECTS; object++) {
+            ids[object] = "Object_" + object;
+        }
+        for (int time = 0; time < TIMES; time++) {
+            for (int object = 0; object < OBJECTS; object++) {
+                dataBase.addCloudPoints(new StampedCloudPoints(ids[object], time, cloud));
+            }
+        }
+        if (frozen) {
+            dataBase.freeze();
+        }
+
+        pool = Executors.newFixedThreadPool(workers);
+        tasks = new ArrayList<>(workers);
+        for (int worker = 0; worker < workers; worker++) {
+            int first = worker;
+            tasks.add(() -> {
+                int found = 0;
+                for (int i = first; i < LOOKUPS; i += workers) {
+                    found += dataBase.getCloudPointsAt(i % TIMES).get(ids[i % OBJECTS]).size();
+                }
+                return found;
+            });
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdownNow();
+        LiDarDataBase.getInstance().clearCloudPoints();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int lookups() throws InterruptedException, ExecutionException {
+        int found = 0;
+        for (Future<Integer> result : pool.invokeAll(tasks)) {
+            found += result.get();
+        }
+        if (found != LOOKUPS) {
+            throw new IllegalStateException("Found " + found + " of " + LOOKUPS + " lookups");
+        }
+        return found;
+    }
+}
@@ -0,0 +1,132 @@
+package bgu.spl.mics.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bgu.spl.mics.ExecutionMode;
+import bgu.spl.mics.MicroService;
+import bgu.spl.mics.ServiceExecutor;
+import bgu.spl.mics.application.messages.TerminatedBroadcast;
+import bgu.spl.mics.application.messages.TickBroadcast;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+import bgu.spl.mics.application.services.TimeService;
+
+/**
+ * Ticks per second a {@link TimeService} in real time reaches against tick lengths of
+ * a few microseconds, and how it misses them. After every iteration the overrun and
+ * lateness counters of the {@link StatisticalFolder} are printed, look at the lines
+ * starting with {@code ticks:}. A rate below {@code 1e6 / tickMicros} means the clock
+ * fell behind; {@link TickRateBenchmark} gives the rate without deadlines.
+ * <p>
+ * Every invocation runs a whole simulation of {@code TICKS} ticks.
+ * <p>
+ * Run with: {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.openjdk.jmh.Main RealTimeTickBenchmark"}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RealTimeTickBenchmark {
+    private static final int TICKS = 200;
+
+    @Param({ "10", "100", "1000" })
+    private int tickMicros;
+
+    @Param({ "1", "10" })
+    private int sensors;
+
+    @Param({ "PLATFORM", "POOL" })
+    private ExecutionMode mode;
+
+    @Param({ "BURST", "SKIP", "STRETCH" })
+    private TimeService.CatchUpPolicy catchUp;
+
+    private ServiceExecutor executor;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+        executor = ServiceExecutor.create(mode);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(stdout);
+    }
+
+    @Setup(Level.Iteration)
+    public void clearCounters() {
+        StatisticalFolder.getInstance().cleanTickLateness();
+    }
+
+    @TearDown(Level.Iteration)
+    public void printCounters() {
+        StatisticalFolder folder = StatisticalFolder.getInstance();
+        stdout.printf("%nticks: %d, overrun: %d, mean lateness: %d ns, max lateness: %d ns%n",
+            folder.getTimedTicks(), folder.getOverrunTicks(), folder.getMeanTickLatenessNanos(), folder.getMaxTickLatenessNanos());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKS)
+    public void ticks() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(sensors);
+        List<SensorService> services = new ArrayList<>(sensors);
+        for (int i = 0; i < sensors; i++) {
+            SensorService sensor = new SensorService("Sensor-" + i, started);
+            services.add(sensor);
+            executor.execute(sensor);
+        }
+        started.await();
+
+        TimeService time = new TimeService(tickMicros, TimeUnit.MICROSECONDS, TICKS, TimeService.ClockMode.REAL_TIME, catchUp);
+        executor.execute(time);
+        executor.join(time);
+        for (SensorService sensor : services) {
+            executor.join(sensor);
+        }
+    }
+
+    private static class SensorService extends MicroService {
+        private final CountDownLatch started;
+
+        SensorService(String name, CountDownLatch started) {
+            super(name);
+            this.started = started;
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeBroadcast(TickBroadcast.class, tick -> { });
+            subscribeBroadcast(TerminatedBroadcast.class, terminated -> terminate());
+            started.countDown();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package bgu.spl.mics.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bgu.spl.mics.Event;
+import bgu.spl.mics.Future;
+import bgu.spl.mics.Message;
+import bgu.spl.mics.MessageBusImpl;
+import bgu.spl.mics.MicroService;
+import bgu.spl.mics.application.messages.DetectObjectsEvent;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+
+/**
+ * Measures how fast {@code sendEvent} picks a handler when many LiDAR workers share
+ * {@link DetectObjectsEvent}: the atomic cursor of {@link MessageBusImpl} against the
+ * poll/offer rotation of the subscriber queue it replaced.
+ * <p>
+ * The workers have no mailbox, so only handler selection is measured.
+ * <p>
+ * Run with: {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.openjdk.jmh.Main RoundRobinDispatchBenchmark"}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class RoundRobinDispatchBenchmark {
+
+    @Param({ "4", "32" })
+    private int lidarWorkers;
+
+    private final DetectObjectsEvent event = new DetectObjectsEvent(new StampedDetectedObjects(1), "Camera");
+    private MessageBusImpl bus;
+    private LegacyDispatcher legacy;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+
+        bus = MessageBusImpl.getInstance();
+        legacy = new LegacyDispatcher();
+        for (int i = 0; i < lidarWorkers; i++) {
+            MicroService worker = new IdleService("LiDarService-" + i);
+            bus.subscribeEvent(DetectObjectsEvent.class, worker);
+            legacy.subscribe(DetectObjectsEvent.class, worker);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public Future<StampedDetectedObjects> atomicCursor() {
+        return bus.sendEvent(event);
+    }
+
+    @Benchmark
+    public MicroService pollOfferRotation() {
+        return legacy.select(event);
+    }
+
+    private static class IdleService extends MicroService {
+        IdleService(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void initialize() {
+        }
+    }
+
+    /**
+     * Handler selection as it was before the atomic cursor.
+     */
+    private static class LegacyDispatcher {
+        private final ConcurrentHashMap<Class<? extends Message>, LinkedBlockingQueue<MicroService>> subscriptions = new ConcurrentHashMap<>();
+
+        void subscribe(Class<? extends Message> type, MicroService m) {
+            subscriptions.putIfAbsent(type, new LinkedBlockingQueue<>());
+            synchronized (subscriptions.get(type)) {
+                subscriptions.get(type).offer(m);
+            }
+        }
+
+        MicroService select(Event<?> e) {
+            LinkedBlockingQueue<MicroService> subscribers;
+            synchronized (subscriptions) {
+                subscribers = subscriptions.get(e.getClass());
+            }
+            if (subscribers == null || subscribers.isEmpty()) {
+                return null;
+            }
+            MicroService m;
+            synchronized (subscribers) {
+                m = subscribers.poll();
+                if (m != null) {
+                    subscribers.offer(m);
+                }
+            }
+            return m;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package bgu.spl.mics.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bgu.spl.mics.Event;
+import bgu.spl.mics.Message;
+import bgu.spl.mics.MessageBusImpl;
+import bgu.spl.mics.MicroService;
+import bgu.spl.mics.RoutingPolicy;
+
+/**
+ * Latency from sending an event until it was handled, with one slow worker among
+ * fast ones, for every {@link RoutingPolicy}. Look at the p0.99 and p0.999 rows of
+ * the sample-time output.
+ * <p>
+ * Run with: {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.openjdk.jmh.Main RoutingTailLatencyBenchmark"}
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class RoutingTailLatencyBenchmark {
+
+    @Param({ "ROUND_ROBIN", "LEAST_LOADED", "POWER_OF_TWO_CHOICES" })
+    private RoutingPolicy policy;
+
+    @Param({ "4" })
+    private int workers;
+
+    // the first worker needs this long for every event, the others need fastWorkMicros
+    @Param({ "200" })
+    private int slowWorkMicros;
+
+    @Param({ "10" })
+    private int fastWorkMicros;
+
+    private MessageBusImpl bus;
+    private final List<MicroService> services = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+
+        bus = MessageBusImpl.getInstance();
+        bus.setEventRouter(WorkEvent.class, policy.newRouter());
+        for (int i = 0; i < workers; i++) {
+            MicroService worker = new IdleService("LiDarService-" + i);
+            long workNanos = TimeUnit.MICROSECONDS.toNanos(i == 0 ? slowWorkMicros : fastWorkMicros);
+            bus.register(worker);
+            bus.subscribeEvent(WorkEvent.class, worker);
+            Thread thread = new Thread(() -> handle(worker, workNanos), worker.getName());
+            thread.setDaemon(true);
+            thread.start();
+            services.add(worker);
+            threads.add(thread);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (MicroService service : services) {
+            bus.unregister(service);
+        }
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public void sendAndAwait() throws InterruptedException {
+        WorkEvent event = new WorkEvent();
+        bus.sendEvent(event);
+        event.handled.await();
+    }
+
+    private void handle(MicroService worker, long workNanos) {
+        try {
+            while (true) {
+                Message message = bus.awaitMessage(worker);
+                long end = System.nanoTime() + workNanos;
+                while (System.nanoTime() < end) {
+                    Thread.onSpinWait();
+                }
+                WorkEvent event = (WorkEvent) message;
+                bus.complete(event, Boolean.TRUE);
+                event.handled.countDown();
+            }
+        } catch (InterruptedException | IllegalStateException ex) {
+            // benchmark is over
+        }
+    }
+
+    public static class WorkEvent implements Event<Boolean> {
+        private final CountDownLatch handled = new CountDownLatch(1);
+    }
+
+    private static class IdleService extends MicroService {
+        IdleService(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void initialize() {
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package bgu.spl.mics.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.ExecutionMode;
+import bgu.spl.mics.MessageBusImpl;
+import bgu.spl.mics.MicroService;
+import bgu.spl.mics.ServiceExecutor;
+
+/**
+ * Time of one tick when every sensor service wakes up on the tick broadcast, for a
+ * growing number of sensors and every {@link ExecutionMode}.
+ * <p>
+ * Virtual threads need Java 21, on older runtimes the virtual mode uses platform threads.
+ * <p>
+ * Run with: {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.openjdk.jmh.Main ServiceScalingBenchmark"}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServiceScalingBenchmark {
+
+    @Param({ "10", "100", "1000", "10000" })
+    private int sensors;
+
+    @Param({ "PLATFORM", "VIRTUAL", "POOL" })
+    private ExecutionMode mode;
+
+    private MessageBusImpl bus;
+    private ServiceExecutor executor;
+    private final List<SensorService> services = new ArrayList<>();
+    private volatile CountDownLatch tickHandled;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+
+        bus = MessageBusImpl.getInstance();
+        executor = ServiceExecutor.create(mode);
+        CountDownLatch started = new CountDownLatch(sensors);
+        for (int i = 0; i < sensors; i++) {
+            SensorService sensor = new SensorService("Sensor-" + i, started);
+            services.add(sensor);
+            executor.execute(sensor);
+        }
+        started.await();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        bus.sendBroadcast(new StopBroadcast());
+        for (SensorService sensor : services) {
+            executor.join(sensor);
+        }
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public void tick() throws InterruptedException {
+        CountDownLatch handled = new CountDownLatch(sensors);
+        tickHandled = handled;
+        bus.sendBroadcast(new SensorTick());
+        handled.await();
+    }
+
+    public static class SensorTick implements Broadcast {
+    }
+
+    public static class StopBroadcast implements Broadcast {
+    }
+
+    private class SensorService extends MicroService {
+        private final CountDownLatch started;
+
+        SensorService(String name, CountDownLatch started) {
+            super(name);
+            this.started = started;
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeBroadcast(SensorTick.class, tick -> tickHandled.countDown());
+            subscribeBroadcast(StopBroadcast.class, stop -> terminate());
+            started.countDown();
+        }
+    }
+}
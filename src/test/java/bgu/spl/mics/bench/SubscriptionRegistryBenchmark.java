@@ -0,0 +1,170 @@
+package bgu.spl.mics.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.Message;
+import bgu.spl.mics.MessageBusImpl;
+import bgu.spl.mics.MicroService;
+
+/**
+ * Compares the copy-on-write subscriber registry of {@link MessageBusImpl} with the
+ * lock based registry it replaced, while one thread keeps subscribing and
+ * unregistering a service and the others keep broadcasting.
+ * <p>
+ * The subscribers have no mailbox, so only the registry lookup and the fan-out
+ * loop are measured and not the queue insertions.
+ * <p>
+ * Run with: {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.openjdk.jmh.Main SubscriptionRegistryBenchmark"}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class SubscriptionRegistryBenchmark {
+
+    @Param({ "8", "64" })
+    private int subscribers;
+
+    private final BenchBroadcast broadcast = new BenchBroadcast();
+    private MessageBusImpl bus;
+    private LegacyRegistry legacy;
+    private MicroService churner;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // register and unregister log every call, keep that out of the measurement
+        stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+
+        bus = MessageBusImpl.getInstance();
+        legacy = new LegacyRegistry();
+        for (int i = 0; i < subscribers; i++) {
+            MicroService service = new IdleService("subscriber-" + i);
+            bus.subscribeBroadcast(BenchBroadcast.class, service);
+            legacy.subscribe(BenchBroadcast.class, service);
+        }
+        churner = new IdleService("churner");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    @Group("copyOnWrite")
+    @GroupThreads(3)
+    public void copyOnWriteSend() {
+        bus.sendBroadcast(broadcast);
+    }
+
+    @Benchmark
+    @Group("copyOnWrite")
+    @GroupThreads(1)
+    public void copyOnWriteChurn() {
+        bus.subscribeBroadcast(BenchBroadcast.class, churner);
+        bus.unregister(churner);
+    }
+
+    @Benchmark
+    @Group("legacy")
+    @GroupThreads(3)
+    public void legacySend() {
+        legacy.sendBroadcast(broadcast);
+    }
+
+    @Benchmark
+    @Group("legacy")
+    @GroupThreads(1)
+    public void legacyChurn() {
+        legacy.subscribe(BenchBroadcast.class, churner);
+        legacy.unregister(churner);
+    }
+
+    public static class BenchBroadcast implements Broadcast {
+    }
+
+    private static class IdleService extends MicroService {
+        IdleService(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void initialize() {
+        }
+    }
+
+    /**
+     * The subscription table as it was before the copy-on-write registry: a global
+     * lock around the lookup and a per-type lock around every fan-out.
+     */
+    private static class LegacyRegistry {
+        private final ConcurrentHashMap<MicroService, BlockingQueue<Message>> microserviceQueues = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Class<? extends Message>, LinkedBlockingQueue<MicroService>> subscriptions = new ConcurrentHashMap<>();
+
+        void subscribe(Class<? extends Message> type, MicroService m) {
+            subscriptions.putIfAbsent(type, new LinkedBlockingQueue<>());
+            synchronized (subscriptions.get(type)) {
+                subscriptions.get(type).offer(m);
+            }
+        }
+
+        void sendBroadcast(Broadcast b) {
+            LinkedBlockingQueue<MicroService> subscribers;
+            synchronized (subscriptions) {
+                subscribers = subscriptions.get(b.getClass());
+            }
+            if (subscribers != null) {
+                synchronized (subscribers) {
+                    for (MicroService m : subscribers) {
+                        BlockingQueue<Message> queue = microserviceQueues.get(m);
+                        if (queue != null) {
+                            queue.offer(b);
+                        }
+                    }
+                }
+            }
+        }
+
+        void unregister(MicroService m) {
+            microserviceQueues.remove(m);
+            synchronized (subscriptions) {
+                for (LinkedBlockingQueue<MicroService> subscribers : subscriptions.values()) {
+                    synchronized (subscribers) {
+                        subscribers.remove(m);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package bgu.spl.mics.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bgu.spl.mics.ExecutionMode;
+import bgu.spl.mics.MicroService;
+import bgu.spl.mics.ServiceExecutor;
+import bgu.spl.mics.application.messages.TerminatedBroadcast;
+import bgu.spl.mics.application.messages.TickBroadcast;
+import bgu.spl.mics.application.services.TimeService;
+
+/**
+ * Ticks per second a {@link TimeService} in virtual time sustains with a number of
+ * sensor services that handle every tick, which bounds the tick rate a real time run
+ * can keep up with. {@link RealTimeTickBenchmark} runs the same simulation against
+ * real time deadlines.
+ * <p>
+ * Every invocation runs a whole simulation of {@code TICKS} ticks.
+ * <p>
+ * Run with: {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.openjdk.jmh.Main TickRateBenchmark"}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TickRateBenchmark {
+    private static final int TICKS = 1000;
+
+    @Param({ "1", "10", "100" })
+    private int sensors;
+
+    @Param({ "PLATFORM", "POOL" })
+    private ExecutionMode mode;
+
+    private ServiceExecutor executor;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+        executor = ServiceExecutor.create(mode);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKS)
+    public void ticks() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(sensors);
+        List<SensorService> services = new ArrayList<>(sensors);
+        for (int i = 0; i < sensors; i++) {
+            SensorService sensor = new SensorService("Sensor-" + i, started);
+            services.add(sensor);
+            executor.execute(sensor);
+        }
+        started.await();
+
+        TimeService time = new TimeService(0, TimeUnit.NANOSECONDS, TICKS, TimeService.ClockMode.VIRTUAL_TIME, TimeService.CatchUpPolicy.BURST);
+        executor.execute(time);
+        executor.join(time);
+        for (SensorService sensor : services) {
+            executor.join(sensor);
+            if (sensor.lastTick != TICKS) {
+                throw new IllegalStateException(sensor.getName() + " stopped at tick " + sensor.lastTick);
+            }
+        }
+    }
+
+    private static class SensorService extends MicroService {
+        private final CountDownLatch started;
+        private int lastTick = 0;
+
+        SensorService(String name, CountDownLatch started) {
+            super(name);
+            this.started = started;
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeBroadcast(TickBroadcast.class, tick -> lastTick = tick.getCurrentTick());
+            subscribeBroadcast(TerminatedBroadcast.class, terminated -> terminate());
+            started.countDown();
+        }
+    }
+}